@@ -6,13 +6,18 @@ import com.aionemu.geobuilder.loaders.CgfLoader;
 import com.aionemu.geobuilder.loaders.EntityLoader;
 import com.aionemu.geobuilder.loaders.ObjectsLstLoader;
 import com.aionemu.geobuilder.meshData.CollisionIntention;
+import com.aionemu.geobuilder.meshData.CollisionProxy;
+import com.aionemu.geobuilder.meshData.CollisionProxyFitter;
 import com.aionemu.geobuilder.meshData.MeshData;
-import com.aionemu.geobuilder.meshData.MeshFace;
+import com.aionemu.geobuilder.meshData.MeshLodGenerator;
+import com.aionemu.geobuilder.meshData.MeshSimplifier;
+import com.aionemu.geobuilder.meshData.MeshSplitter;
 import com.aionemu.geobuilder.meshData.ObjectMeshData;
+import com.aionemu.geobuilder.meshData.PartInstancer;
 import com.aionemu.geobuilder.pakaccessor.PakFile;
 import com.aionemu.geobuilder.utils.Matrix4f;
+import com.aionemu.geobuilder.utils.OffHeapArena;
 import com.aionemu.geobuilder.utils.PathSanitizer;
-import com.aionemu.geobuilder.utils.Vector3;
 import com.aionemu.geobuilder.utils.XmlParser;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.converters.PathConverter;
@@ -65,7 +70,55 @@ public class AionLevelsProcessor {
   @Parameter(names = "-ds", description = "Disable mesh sorting to keep original order of vertices, faces and the face winding order", order = 7)
   protected boolean disableMeshSorting;
 
-  @Parameter(names = "-v", description = "Activate verbose logging", order = 8)
+  @Parameter(names = "-sp", description = "Store identical mesh parts only once (changes the models.mesh layout: part table followed by meshes referencing part IDs)", order = 8)
+  protected boolean shareMeshParts;
+
+  @Parameter(names = "-ri", description = "Store rotated or translated copies of mesh parts as transformed instances of one part, if all vertices match within the given tolerance in world units (changes the models.mesh layout like -sp) Example: -ri 0.001", order = 9)
+  protected Float instancingTolerance;
+
+  @Parameter(names = "-wt", description = "Weld mesh vertices within the given distance in world units and remove resulting degenerate faces (ignored if mesh compacting is disabled) Example: -wt 0.001", order = 10)
+  protected Float weldTolerance;
+
+  @Parameter(names = "-se", description = "Simplify meshes after compacting, keeping them within the given distance in world units of the original surface (walk obstacles may deviate 4 times as much) Example: -se 0.01", order = 11)
+  protected Float simplificationError;
+
+  @Parameter(names = "-qv", description = "Store mesh vertices as 16-bit coordinates relative to the bounding box of their part, if the error stays below " + MeshFileWriter.MAX_QUANTIZATION_ERROR + " world units (changes the models.mesh layout)", order = 12)
+  protected boolean quantizeVertices;
+
+  @Parameter(names = "-bvh", description = "Store a bounding volume hierarchy after the faces of each mesh part, with faces in leaf order (changes the models.mesh layout)", order = 13)
+  protected boolean bakeBvh;
+
+  @Parameter(names = "-bv", description = "Store bounding boxes and spheres for each mesh and mesh part (changes the models.mesh layout)", order = 14)
+  protected boolean writeBounds;
+
+  @Parameter(names = "-so", description = "Sort mesh vertices and faces along a space-filling curve instead of by index, so faces which are close in space are close in the file", order = 15)
+  protected boolean spatialMeshSorting;
+
+  @Parameter(names = "-ci", description = "Store mesh face indices delta and varint encoded (changes the models.mesh layout)", order = 16)
+  protected boolean compressIndices;
+
+  @Parameter(names = "-mb", description = "Keep at most the given amount of mesh data in memory (in MiB) and spill the rest to a temp file in the output folder Example: -mb 512", order = 17)
+  protected Integer meshMemoryBudget;
+
+  @Parameter(names = "-st", description = "Split mesh parts with more than the given number of vertices into spatial tiles (raised for meshes which would exceed " + MeshSplitter.MAX_PARTS + " parts, parts with more than " + MeshSplitter.MAX_TILE_SIZE + " vertices or faces are always split) Example: -st 4096", order = 18)
+  protected Integer meshSplitSize;
+
+  @Parameter(names = "-il", description = "Append an index of mesh entries and geo records per collision intention to models.mesh and .geo files, so servers can load only the layers they need (changes the models.mesh and .geo layout)", order = 19)
+  protected boolean layeredOutput;
+
+  @Parameter(names = "-cp", description = "Store a box, capsule or convex hull before the parts of vegetation and placeable meshes with up to " + CollisionProxyFitter.MAX_FACES + " faces, if its surface stays within the given distance in world units of the mesh (changes the models.mesh layout) Example: -cp 0.05", order = 20)
+  protected Float collisionProxyError;
+
+  @Parameter(names = "-fp", description = "Store the plane of each mesh face after the faces, trading file size for faster raycasts (changes the models.mesh layout)", order = 21)
+  protected boolean writeFacePlanes;
+
+  @Parameter(names = "-lod", description = "Store simplified levels of detail after each mesh part, each within the given distance in world units of the original surface (changes the models.mesh layout) Example: -lod 0.1,0.5", order = 22)
+  protected List<Float> lodErrors;
+
+  @Parameter(names = "-mi", description = "Reference meshes in .geo files by their int ID (index in models.mesh) instead of their name (changes the models.mesh and .geo layout)", order = 23)
+  protected boolean meshIdReferences;
+
+  @Parameter(names = "-v", description = "Activate verbose logging", order = 24)
   protected boolean verbose;
 
   private static final Logger log = Logger.getLogger("GeoBuilder");
@@ -107,6 +160,8 @@ public class AionLevelsProcessor {
 
   private final Set<String> processedCgfs = ConcurrentHashMap.newKeySet();
   private final Set<String> emptyCgfs = ConcurrentHashMap.newKeySet();
+  private final Map<String, Integer> meshCollisionIntentions = new ConcurrentHashMap<>();
+  private final Map<String, Integer> meshIds = new ConcurrentHashMap<>();
 
   protected void process() {
     log.setLevel(verbose ? Level.ALL : Level.INFO);
@@ -117,17 +172,23 @@ public class AionLevelsProcessor {
       List<LevelData> levels = findLevelsToProcess();
       if (!levels.isEmpty()) {
         if (Files.isDirectory(outPath))
-          Files.list(outPath).filter(p -> p.toString().endsWith(".geo") || p.toString().endsWith(".mesh") || p.toString().endsWith(".png")).forEach(p -> p.toFile().delete());
+          Files.list(outPath).filter(p -> p.toString().endsWith(".geo") || p.toString().endsWith(".mesh") || p.toString().endsWith(".png") || p.toString().endsWith(OffHeapArena.SPILL_FILE_SUFFIX)).forEach(p -> p.toFile().delete());
         else
           Files.createDirectories(outPath);
 
-        int materialsCount = CgfLoader.loadMaterials(clientPath);
-        log.info("Found " + materialsCount + " materials");
+        // spill to the output folder, since the default temp folder is often memory backed
+        OffHeapArena meshArena = meshMemoryBudget == null ? new OffHeapArena() : new OffHeapArena(meshMemoryBudget * 1024L * 1024, outPath);
+        BuildContext context = new BuildContext(MaterialRegistry.load(clientPath), meshArena);
+        log.info("Found " + context.materials.size() + " materials");
         Map<String, Short> houseAddresses = loadHouseAddresses();
-        processLevels(levels, houseAddresses);
+        processLevels(levels, houseAddresses, context);
         Thread terrainTask = Thread.startVirtualThread(() -> createTerrains(outPath, levels));
         List<Path> meshPaks = collectMeshFilePaths();
-        createMeshes(outPath, meshPaks, levels);
+        try {
+          createMeshes(outPath, meshPaks, levels, context);
+        } finally {
+          meshArena.close();
+        }
         createGeoFiles(outPath, levels);
         if (terrainTask.isAlive()) {
           log.info("Waiting for terrain generation to finish\r");
@@ -218,31 +279,31 @@ public class AionLevelsProcessor {
     }
   }
 
-  private void processLevels(List<LevelData> levels, Map<String, Short> houseAddresses) {
+  private void processLevels(List<LevelData> levels, Map<String, Short> houseAddresses, BuildContext context) {
     levels.parallelStream().forEach(level -> {
-      parseLevelPak(level, houseAddresses);
+      parseLevelPak(level, houseAddresses, context);
       level.streamAllMeshFileNames().filter(m -> !isIgnored(m, level)).forEach(requiredCgfs::add);
     });
     log.info("Found " + requiredCgfs.size() + " mesh references in " + levels.size() + " level" + (levels.size() == 1 ? "" : "s"));
   }
 
-  private void parseLevelPak(LevelData level, Map<String, Short> houseAddresses) {
+  private void parseLevelPak(LevelData level, Map<String, Short> houseAddresses, BuildContext context) {
     log.info(level + ": Processing " + level.clientLevelPakFile.getFileName() + '\r');
     String levelName = level.levelName.toLowerCase();
     boolean needsBrushLst = !(level.isTestLevel() || levelName.contains("system_basic") || levelName.endsWith("prison"));
     try (PakFile pakFile = PakFile.open(level.clientLevelPakFile)) {
-      processPakFile(pakFile, "leveldata.xml", level, buffer -> parseLevelData(buffer, level)); // loads missionPath and useTerrain
+      processPakFile(pakFile, "leveldata.xml", level, buffer -> parseLevelData(buffer, level, context.materials)); // loads missionPath and useTerrain
       if (level.useTerrain)
-        processPakFile(pakFile, "terrain/land_map.h32", level, buffer -> level.terrain.load(buffer, allTerrainMaterials));
+        processPakFile(pakFile, "terrain/land_map.h32", level, buffer -> level.terrain.load(buffer, context.materials, allTerrainMaterials));
       else
         log.fine(level + ": skipped loading terrain (disabled in leveldata.xml)");
       if (level.missionPath != null) {
-        processPakFile(pakFile, level.missionPath, level, buffer -> level.entityEntries = EntityLoader.loadPlaceables(buffer, houseAddresses));
+        processPakFile(pakFile, level.missionPath, level, buffer -> level.entityEntries = EntityLoader.loadPlaceables(buffer, houseAddresses, context));
         // secondary door state will be generated from doors in primary state
         level.entityEntries.stream().filter(e -> e.type == EntryType.DOOR).map(e -> e.mesh).forEach(requiredDoorCgas::add);
       }
       if (pakFile.contains("brush.lst"))
-        processPakFile(pakFile, "brush.lst", level, buffer -> level.brushMeshData = BrushLstLoader.load(buffer));
+        processPakFile(pakFile, "brush.lst", level, buffer -> level.brushMeshData = BrushLstLoader.load(buffer, context));
       else
         log.log(needsBrushLst ? Level.WARNING : Level.FINE, level + ": " + level.clientLevelPakFile + " does not contain brush.lst");
       if (pakFile.contains("objects.lst"))
@@ -257,7 +318,7 @@ public class AionLevelsProcessor {
     }
   }
 
-  private void parseLevelData(ByteBuffer leveldataXml, LevelData level) throws Exception {
+  private void parseLevelData(ByteBuffer leveldataXml, LevelData level, MaterialRegistry materials) throws Exception {
     Element rootNode = XmlParser.parse(leveldataXml).getRootElement();
     Element levelInfo = rootNode.getChild("LevelInfo");
     int heightmapXSize = levelInfo.getAttribute("HeightmapXSize").getIntValue();
@@ -269,7 +330,7 @@ public class AionLevelsProcessor {
     for (int i = 0; i < objects.size(); i++) {
       String material = objects.get(i).getAttributeValue("Material").trim();
       if (!material.isEmpty()) {
-        int matId = CgfLoader.getMaterialId(material);
+        int matId = materials.getMaterialId(material);
         if (matId == -1) {
           if (level.isTestLevel())
             log.fine(level + ": Missing material: " + material);
@@ -330,7 +391,7 @@ public class AionLevelsProcessor {
     return meshPaks;
   }
 
-  private void createMeshes(Path outputFolder, List<Path> meshPaks, List<LevelData> levels) throws IOException {
+  private void createMeshes(Path outputFolder, List<Path> meshPaks, List<LevelData> levels, BuildContext context) throws IOException {
     if (requiredCgfs.isEmpty()) {
       log.info("No referenced meshes, skipping generating mesh file");
       return;
@@ -338,11 +399,13 @@ public class AionLevelsProcessor {
     log.info("Generating mesh file\r");
     AtomicInteger totalMeshes = new AtomicInteger(requiredCgfs.size());
     Map<String, List<MeshData>> availableMeshes = new ConcurrentHashMap<>();
+    MeshStats stats = new MeshStats(simplificationError == null ? null : new MeshSimplifier(simplificationError),
+        new MeshSplitter(meshSplitSize == null ? MeshSplitter.MAX_TILE_SIZE : meshSplitSize), lodErrors == null ? null : new MeshLodGenerator(lodErrors));
     meshPaks.parallelStream().forEach(meshPakFile -> {
       if (requiredCgfs.isEmpty())
         return;
       try (PakFile pakFile = PakFile.open(meshPakFile, clientPath)) {
-        processCgfFiles(pakFile, availableMeshes, totalMeshes);
+        processCgfFiles(pakFile, availableMeshes, totalMeshes, context, stats);
       } catch (Exception e) {
         log.log(Level.SEVERE, "", e);
       }
@@ -368,34 +431,180 @@ public class AionLevelsProcessor {
       }
     }
     if (!disableMeshCompacting)
-      compact(availableMeshes.values());
+      stats.log();
+    else if (weldTolerance != null || simplificationError != null)
+      log.warning("Vertex welding and mesh simplification are ignored because mesh compacting is disabled");
+    if (stats.splitParts.get() > 0)
+      log.info("Split " + stats.splitParts + " oversized mesh parts into " + stats.tiles + " tiles");
+    if (lodErrors != null)
+      log.info("Created " + stats.lods.values().stream().mapToInt(List::size).sum() + " levels of detail for " + stats.lods.size() + " mesh parts");
+    log.fine("Stored " + context.meshArena.getAllocatedBytes() / 1024 / 1024 + " MiB of mesh data off-heap (" + context.meshArena.getSpilledBytes() / 1024 / 1024 + " MiB spilled to disk)");
+
+    if (layeredOutput)
+      availableMeshes.forEach((name, parts) -> meshCollisionIntentions.put(name, MeshFileWriter.getCollisionIntentions(parts)));
 
     log.info("Merging duplicate meshes\r");
-    if (!disableMeshSorting)
-      availableMeshes.values().parallelStream().forEach(m -> m.forEach(MeshData::sort)); // this helps find duplicates
-    Map<List<MeshData>, String> uniqueMeshes = availableMeshes.entrySet().stream()
-        .sorted(Map.Entry.comparingByKey()) // sort to generate .mesh files with deterministic, comparable hashes
-        .collect(Collectors.groupingBy(Map.Entry::getValue, LinkedHashMap::new, Collectors.mapping(Map.Entry::getKey, Collectors.joining("|"))));
+    Map<List<MeshData>, String> uniqueMeshes = mergeDuplicates(availableMeshes);
     int duplicateCount = availableMeshes.size() - uniqueMeshes.size();
     String meshes = uniqueMeshes.size() + " unique meshes (" + duplicateCount + " duplicates have been merged)";
     log.info("Writing " + meshes + '\r');
 
     Path meshFile = outputFolder.resolve("models.mesh");
-    try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(meshFile)))) {
-      uniqueMeshes.forEach((data, paths) -> writeMeshes(paths, data, stream));
-    }
+    MeshFileWriter writer = new MeshFileWriter(getMeshFileFeatures());
+    if (instancingTolerance != null)
+      writer.setPartInstances(findPartInstances(uniqueMeshes.keySet()));
+    if (collisionProxyError != null)
+      writer.setCollisionProxies(findCollisionProxies(uniqueMeshes, levels, writer));
+    if (lodErrors != null)
+      writer.setLods(stats.lods);
+    writer.write(meshFile, uniqueMeshes);
+    meshIds.putAll(writer.getMeshIds());
+    if (shareMeshParts || instancingTolerance != null)
+      meshes += " and " + writer.getPartCount() + " unique parts";
+    if (quantizeVertices)
+      meshes += " (" + writer.getQuantizedPartCount() + " of " + writer.getPartCount() + " parts with quantized vertices)";
     log.info("Created " + meshFile.getFileName() + " with " + meshes);
   }
 
-  private void compact(Collection<List<MeshData>> meshes) {
-    log.info("Compacting meshes\r");
-    AtomicInteger oldSize = new AtomicInteger(), newSize = new AtomicInteger();
-    meshes.parallelStream().forEach(m -> m.parallelStream().forEach(meshData -> {
-      oldSize.addAndGet(meshData.getSize());
-      meshData.compact();
-      newSize.addAndGet(meshData.getSize());
-    }));
-    log.info("Compacted meshes to " + Math.round(10000f * newSize.get() / oldSize.get()) / 100f + " % of their original size (before: " + (oldSize.get() / 1024 / 1024) + " MiB, after: " + (newSize.get() / 1024 / 1024) + " MiB)");
+  private Set<MeshFileWriter.Feature> getMeshFileFeatures() {
+    Set<MeshFileWriter.Feature> features = EnumSet.noneOf(MeshFileWriter.Feature.class);
+    if (shareMeshParts)
+      features.add(MeshFileWriter.Feature.SHARED_PARTS);
+    if (instancingTolerance != null)
+      features.add(MeshFileWriter.Feature.INSTANCED_PARTS);
+    if (quantizeVertices)
+      features.add(MeshFileWriter.Feature.QUANTIZED_VERTICES);
+    if (bakeBvh)
+      features.add(MeshFileWriter.Feature.BVH);
+    if (writeBounds)
+      features.add(MeshFileWriter.Feature.BOUNDS);
+    if (compressIndices)
+      features.add(MeshFileWriter.Feature.COMPRESSED_INDICES);
+    if (layeredOutput)
+      features.add(MeshFileWriter.Feature.LAYERS);
+    if (collisionProxyError != null)
+      features.add(MeshFileWriter.Feature.COLLISION_PROXIES);
+    if (writeFacePlanes)
+      features.add(MeshFileWriter.Feature.FACE_PLANES);
+    if (lodErrors != null)
+      features.add(MeshFileWriter.Feature.LODS);
+    if (meshIdReferences)
+      features.add(MeshFileWriter.Feature.MESH_IDS);
+    return features;
+  }
+
+  private Set<GeoFileFeature> getGeoFileFeatures() {
+    Set<GeoFileFeature> features = EnumSet.noneOf(GeoFileFeature.class);
+    if (layeredOutput)
+      features.add(GeoFileFeature.LAYERS);
+    if (meshIdReferences)
+      features.add(GeoFileFeature.MESH_IDS);
+    return features;
+  }
+
+  private Map<MeshData, PartInstancer.PartInstance> findPartInstances(Collection<List<MeshData>> meshes) {
+    log.info("Searching for transformed copies of mesh parts\r");
+    List<MeshData> parts = meshes.stream().flatMap(List::stream).distinct().toList();
+    Map<MeshData, PartInstancer.PartInstance> instances = new PartInstancer(instancingTolerance, quantizeVertices).findInstances(parts);
+    long canonicalParts = instances.values().stream().map(PartInstancer.PartInstance::canonicalPart).distinct().count();
+    log.info("Found " + instances.size() + " mesh parts which are transformed copies of " + canonicalParts + " other parts");
+    return instances;
+  }
+
+  /**
+   * Fits proxies to props (vegetation and placeables) only, since other meshes are rarely simple shapes. Proxies are fitted to the parts as readers
+   * decode them, so they match the written surface.
+   */
+  private Map<List<MeshData>, CollisionProxy> findCollisionProxies(Map<List<MeshData>, String> uniqueMeshes, List<LevelData> levels, MeshFileWriter writer) {
+    log.info("Fitting collision proxies\r");
+    Set<String> propMeshes = levels.stream().flatMap(LevelData::streamPropMeshFileNames).collect(Collectors.toSet());
+    List<List<MeshData>> props = uniqueMeshes.entrySet().stream().filter(e -> Arrays.stream(e.getValue().split("\\|")).anyMatch(propMeshes::contains))
+        .map(Map.Entry::getKey).toList();
+    CollisionProxyFitter fitter = new CollisionProxyFitter(collisionProxyError);
+    Map<List<MeshData>, CollisionProxy> proxies = new ConcurrentHashMap<>();
+    props.parallelStream().forEach(parts -> {
+      CollisionProxy proxy = fitter.fit(parts.stream().map(writer::getDecodedPart).toList());
+      if (proxy != null)
+        proxies.put(parts, proxy);
+    });
+    Map<String, Long> countsByType = proxies.values().stream().collect(Collectors.groupingBy(p -> p.getClass().getSimpleName(), TreeMap::new, Collectors.counting()));
+    log.info("Found collision proxies for " + proxies.size() + " of " + props.size() + " prop meshes " + countsByType);
+    return proxies;
+  }
+
+  /**
+   * Groups mesh names by their content. Grouping runs in parallel on a concurrent map, which partitions the meshes by their content hash. The groups
+   * are then ordered by their alphabetically first mesh name to generate .mesh files with deterministic, comparable hashes.
+   */
+  private Map<List<MeshData>, String> mergeDuplicates(Map<String, List<MeshData>> meshes) {
+    return meshes.entrySet().parallelStream()
+        .collect(Collectors.groupingByConcurrent(Map.Entry::getValue, Collectors.mapping(Map.Entry::getKey, Collectors.toList())))
+        .entrySet().parallelStream()
+        .map(e -> Map.entry(e.getKey(), e.getValue().stream().sorted().toList()))
+        .sorted(Comparator.comparing(e -> e.getValue().getFirst()))
+        .collect(Collectors.toMap(Map.Entry::getKey, e -> String.join("|", e.getValue()), (a, b) -> a, LinkedHashMap::new));
+  }
+
+  /**
+   * Compacts and sorts the meshes of one CGF right after loading, then moves their data off-heap until they're written. Sorting helps find
+   * duplicates, and the fingerprint is precomputed in parallel here, so grouping only needs to compare fingerprints and full content on matches.<br>
+   * Levels of detail are created from the split parts before they're simplified, so their errors are relative to the original surface.
+   */
+  private void prepareMeshes(List<MeshData> meshes, BuildContext context, MeshStats stats) {
+    if (!disableMeshCompacting)
+      meshes.forEach(meshData -> compact(meshData, stats));
+    split(meshes, stats);
+    for (MeshData meshData : meshes) {
+      List<MeshLodGenerator.MeshLod> lods = stats.lodGenerator == null ? Collections.emptyList() : stats.lodGenerator.generate(meshData);
+      if (!disableMeshCompacting)
+        simplify(meshData, stats);
+      if (!lods.isEmpty())
+        lods = stats.lodGenerator.removeRedundant(lods, meshData.faces.size());
+      sort(meshData);
+      meshData.getFingerprint();
+      meshData.moveOffHeap(context.meshArena);
+      for (MeshLodGenerator.MeshLod lod : lods) {
+        sort(lod.mesh());
+        lod.mesh().moveOffHeap(context.meshArena);
+      }
+      if (!lods.isEmpty())
+        stats.lods.put(meshData, lods); // after sorting, since parts are hashed by their content
+    }
+  }
+
+  private void sort(MeshData meshData) {
+    if (spatialMeshSorting && !disableMeshSorting)
+      meshData.sortSpatially(); // deterministic as well, so it also helps find duplicates
+    else if (!disableMeshSorting)
+      meshData.sort();
+  }
+
+  private void split(List<MeshData> meshes, MeshStats stats) {
+    if (meshes.stream().noneMatch(stats.splitter::needsSplit))
+      return;
+    List<MeshData> tiles = stats.splitter.split(meshes);
+    Set<MeshData> tileSet = Collections.newSetFromMap(new IdentityHashMap<>()); // MeshData.equals compares content
+    tileSet.addAll(tiles);
+    int splitParts = (int) meshes.stream().filter(part -> !tileSet.contains(part)).count();
+    stats.splitParts.addAndGet(splitParts);
+    stats.tiles.addAndGet(tiles.size() - (meshes.size() - splitParts));
+    meshes.clear();
+    meshes.addAll(tiles);
+  }
+
+  private void compact(MeshData meshData, MeshStats stats) {
+    stats.oldSize.addAndGet(meshData.getSize());
+    if (weldTolerance != null)
+      meshData.weld(weldTolerance);
+    meshData.compact();
+  }
+
+  private void simplify(MeshData meshData, MeshStats stats) {
+    if (stats.simplifier != null) {
+      stats.faces.addAndGet(meshData.faces.size());
+      stats.removedFaces.addAndGet(stats.simplifier.simplify(meshData));
+    }
+    stats.newSize.addAndGet(meshData.getSize());
   }
 
   private void createTerrains(Path outputFolder, List<LevelData> levels) {
@@ -456,15 +665,19 @@ public class AionLevelsProcessor {
     }
     Path geoFile = outputFolder.resolve(level.levelId + ".geo");
     try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(geoFile)))) {
+      Set<GeoFileFeature> features = getGeoFileFeatures();
+      if (!features.isEmpty()) {
+        stream.write(GeoFileFeature.SIGNATURE);
+        stream.writeInt(features.stream().mapToInt(GeoFileFeature::getMask).reduce(0, (a, b) -> a | b));
+      }
+      LayerIndex layers = features.contains(GeoFileFeature.LAYERS) ? new LayerIndex() : null;
       // brushes
       if (level.brushMeshData != null) {
         for (BrushEntry entry : level.brushMeshData.brushEntries) {
           String meshFileName = level.brushMeshData.meshFileNames.get(entry.meshIndex);
-          if (shouldSkip(meshFileName, level))
+          if (shouldSkip(meshFileName, level) || hasNoMeshId(meshFileName, level))
             continue;
-          byte[] meshFileNameBytes = meshFileName.getBytes(StandardCharsets.US_ASCII);
-          stream.writeShort(meshFileNameBytes.length);
-          stream.write(meshFileNameBytes);
+          writeRecordName(meshFileName, level, stream, layers);
           float[] matrix = entry.matrix;
           // pos vector
           for (int i = 0; i < 3; i++) { // 3, 7, 11
@@ -490,11 +703,9 @@ public class AionLevelsProcessor {
       if (level.objectMeshData != null) {
         for (ObjectEntry entry : level.objectMeshData.objectEntries) {
           String meshFileName = level.objectMeshData.meshFiles.get(entry.meshIndex);
-          if (shouldSkip(meshFileName, level))
+          if (shouldSkip(meshFileName, level) || hasNoMeshId(meshFileName, level))
             continue;
-          byte[] meshFileNameBytes = meshFileName.getBytes(StandardCharsets.US_ASCII);
-          stream.writeShort(meshFileNameBytes.length);
-          stream.write(meshFileNameBytes);
+          writeRecordName(meshFileName, level, stream, layers);
           // pos
           stream.writeFloat(entry.x);
           stream.writeFloat(entry.y);
@@ -524,11 +735,13 @@ public class AionLevelsProcessor {
 
       for (EntityEntry entry : level.entityEntries) {
         if (entry instanceof HouseEntry houseEntry) {
-          writeHouseEntry(houseEntry, stream, level);
+          writeHouseEntry(houseEntry, stream, level, layers);
         } else {
-          writeEntityEntry(entry, stream, level);
+          writeEntityEntry(entry, stream, level, layers);
         }
       }
+      if (layers != null)
+        layers.write(stream);
     }
     return true;
   }
@@ -542,13 +755,44 @@ public class AionLevelsProcessor {
     return emptyCgfs.contains(meshFileName);
   }
 
-  private void writeHouseEntry(HouseEntry entry, DataOutputStream stream, LevelData level) throws IOException {
+  /**
+   * @return True if records reference meshes by ID and the mesh has none. Such records are skipped, since servers couldn't resolve their name either.
+   */
+  private boolean hasNoMeshId(String meshName, LevelData level) {
+    if (!meshIdReferences || meshIds.containsKey(meshName))
+      return false;
+    log.warning(level + ": Skipped " + meshName + ", since it has no mesh ID");
+    return true;
+  }
+
+  /**
+   * Writes the mesh name or ID, which starts each record. With layered output, the record is added to the layers of its mesh.
+   */
+  private void writeRecordName(String meshName, LevelData level, DataOutputStream stream, LayerIndex layers) throws IOException {
+    if (layers != null) {
+      Integer collisionIntentions = meshCollisionIntentions.get(meshName);
+      if (collisionIntentions == null) // written by name like door states without meshes, but readers can't find it via any layer
+        log.warning(level + ": " + meshName + " has no meshes, so its record is not part of any layer");
+      else
+        layers.add(collisionIntentions, stream);
+    }
+    if (meshIdReferences) {
+      Integer meshId = meshIds.get(meshName);
+      if (meshId == null)
+        throw new IOException("No mesh ID for " + meshName);
+      stream.writeInt(meshId);
+      return;
+    }
+    byte[] nameBytes = meshName.getBytes(StandardCharsets.US_ASCII);
+    stream.writeShort(nameBytes.length);
+    stream.write(nameBytes);
+  }
+
+  private void writeHouseEntry(HouseEntry entry, DataOutputStream stream, LevelData level, LayerIndex layers) throws IOException {
     for (String mesh : entry.meshes) {
-      if (shouldSkip(mesh, level))
+      if (shouldSkip(mesh, level) || hasNoMeshId(mesh, level))
         continue;
-      byte[] nameBytes = mesh.getBytes(StandardCharsets.US_ASCII);
-      stream.writeShort(nameBytes.length);
-      stream.write(nameBytes);
+      writeRecordName(mesh, level, stream, layers);
 
       stream.writeFloat(entry.pos.x);
       stream.writeFloat(entry.pos.y);
@@ -580,14 +824,14 @@ public class AionLevelsProcessor {
     }
   }
 
-  private void writeEntityEntry(EntityEntry entry, DataOutputStream stream, LevelData level) throws IOException {
+  private void writeEntityEntry(EntityEntry entry, DataOutputStream stream, LevelData level, LayerIndex layers) throws IOException {
     if (shouldSkip(entry.mesh, level)) {
       return;
     }
     String name = entry instanceof DoorEntry doorEntry ? entry.mesh + doorEntry.suffix : entry.mesh;
-    byte[] nameBytes = name.getBytes(StandardCharsets.US_ASCII);
-    stream.writeShort(nameBytes.length);
-    stream.write(nameBytes);
+    if (hasNoMeshId(name, level)) // like door states without meshes
+      return;
+    writeRecordName(name, level, stream, layers);
 
     stream.writeFloat(entry.pos.x);
     stream.writeFloat(entry.pos.y);
@@ -617,33 +861,36 @@ public class AionLevelsProcessor {
     }
   }
 
-  private void processCgfFiles(PakFile pakFile, Map<String, List<MeshData>> availableMeshes, AtomicInteger totalMeshes) {
+  private void processCgfFiles(PakFile pakFile, Map<String, List<MeshData>> availableMeshes, AtomicInteger totalMeshes, BuildContext context, MeshStats stats) {
     pakFile.getFileNames().parallelStream().forEach(name -> {
       if (!requiredCgfs.remove(name)) // not a required cgf or might also be a duplicate which has already been processed
         return;
       try {
-        CgfLoader loader = new CgfLoader();
+        CgfLoader loader = new CgfLoader(context.materials);
         ByteBuffer file = pakFile.unpak(name);
         loader.load(file);
         List<MeshData> meshes = new ArrayList<>();
         loader.traverseNodes(meshes);
         if (meshes.size() > 0) {
-          if (availableMeshes.putIfAbsent(name, meshes) != null) // should never happen
-            throw new IOException("Duplicate mesh name: " + name);
+          if (context.eventMeshes.contains(name))
+            meshes.forEach(mesh -> mesh.collisionIntention |= CollisionIntention.EVENT.getId());
+          prepareMeshes(meshes, context, stats);
+          List<MeshData> meshes2 = new ArrayList<>();
           if (requiredDoorCgas.contains(name)) {
             CgfLoader loaderState2 = loader.cloneAtTime(999999, file);
-            List<MeshData> meshes2 = new ArrayList<>();
             loaderState2.traverseNodes(meshes2);
-            String doorNameSecondaryState = name + "_state2";
-            if (meshes2.size() > 0 && availableMeshes.putIfAbsent(doorNameSecondaryState, meshes2) == null) {
-              if (BrushLstLoader.EVENT_MESHES.contains(name))
-                meshes2.forEach(mesh -> mesh.collisionIntention |= CollisionIntention.EVENT.getId());
-              processedCgfs.add(doorNameSecondaryState);
-              totalMeshes.incrementAndGet();
-            }
+            if (context.eventMeshes.contains(name))
+              meshes2.forEach(mesh -> mesh.collisionIntention |= CollisionIntention.EVENT.getId());
+            prepareMeshes(meshes2, context, stats);
+          }
+          // publish only fully prepared meshes, so a failing cgf is missing instead of breaking the mesh file
+          if (availableMeshes.putIfAbsent(name, meshes) != null) // should never happen
+            throw new IOException("Duplicate mesh name: " + name);
+          String doorNameSecondaryState = name + "_state2";
+          if (meshes2.size() > 0 && availableMeshes.putIfAbsent(doorNameSecondaryState, meshes2) == null) {
+            processedCgfs.add(doorNameSecondaryState);
+            totalMeshes.incrementAndGet();
           }
-          if (BrushLstLoader.EVENT_MESHES.contains(name))
-            meshes.forEach(mesh -> mesh.collisionIntention |= CollisionIntention.EVENT.getId());
         } else {
           emptyCgfs.add(name);
         }
@@ -655,54 +902,6 @@ public class AionLevelsProcessor {
     });
   }
 
-  private void writeMeshes(String path, List<MeshData> data, DataOutputStream stream) {
-    try {
-      byte[] nameBytes = path.getBytes(StandardCharsets.US_ASCII);
-      if (nameBytes.length > 0xFFFF)
-        throw new IOException("Data doesn't fit in short (nameBytes.length = " + nameBytes.length + ")");
-      stream.writeShort(nameBytes.length);
-      stream.write(nameBytes);
-      if (data.size() > 0xFF)
-        throw new IOException("Data doesn't fit in byte (data.size() = " + data.size() + ")");
-      stream.writeByte(data.size());
-      for (MeshData mesh : data) {
-        if (mesh.vertices.size() > 0xFFFF)
-          throw new IOException("Data doesn't fit in short (mesh.vertices.size() = " + mesh.vertices.size() + ")");
-        stream.writeShort(mesh.vertices.size());
-        for (Vector3 vec : mesh.vertices) {
-          stream.writeFloat(vec.x);
-          stream.writeFloat(vec.y);
-          stream.writeFloat(vec.z);
-        }
-        if (mesh.faces.size() > 0xFFFF)
-          throw new IOException("Data doesn't fit in short (mesh.faces.size() = " + mesh.faces.size() + ")");
-        stream.writeShort(mesh.faces.size());
-        int maxIndex = mesh.getMaxFaceVertexIndex();
-        if (maxIndex > 0xFFFF)
-          throw new IOException("MeshFace index " + maxIndex + " doesn't fit in short");
-        if (maxIndex > 0xFF) {
-          stream.writeByte(2);
-          for (MeshFace face : mesh.faces) {
-            stream.writeShort(face.v0);
-            stream.writeShort(face.v1);
-            stream.writeShort(face.v2);
-          }
-        } else {
-          stream.writeByte(1);
-          for (MeshFace face : mesh.faces) {
-            stream.writeByte(face.v0);
-            stream.writeByte(face.v1);
-            stream.writeByte(face.v2);
-          }
-        }
-        stream.writeByte(mesh.materialId);
-        stream.writeByte(mesh.collisionIntention);
-      }
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
-  }
-
   private boolean isIgnored(String meshFileName, LevelData level) {
     // TODO remove this method after figuring out the correct collision logic
     return switch (meshFileName) {
@@ -714,6 +913,29 @@ public class AionLevelsProcessor {
     };
   }
 
+  private static class MeshStats {
+
+    private final MeshSimplifier simplifier;
+    private final MeshSplitter splitter;
+    private final MeshLodGenerator lodGenerator;
+    private final Map<MeshData, List<MeshLodGenerator.MeshLod>> lods = new ConcurrentHashMap<>();
+    private final AtomicInteger oldSize = new AtomicInteger(), newSize = new AtomicInteger();
+    private final AtomicInteger faces = new AtomicInteger(), removedFaces = new AtomicInteger();
+    private final AtomicInteger splitParts = new AtomicInteger(), tiles = new AtomicInteger();
+
+    private MeshStats(MeshSimplifier simplifier, MeshSplitter splitter, MeshLodGenerator lodGenerator) {
+      this.simplifier = simplifier;
+      this.splitter = splitter;
+      this.lodGenerator = lodGenerator;
+    }
+
+    private void log() {
+      log.info("Compacted meshes to " + Math.round(10000f * newSize.get() / Math.max(1, oldSize.get())) / 100f + " % of their original size (before: " + (oldSize.get() / 1024 / 1024) + " MiB, after: " + (newSize.get() / 1024 / 1024) + " MiB)");
+      if (simplifier != null)
+        log.info("Simplification removed " + removedFaces + " of " + faces + " triangles (" + Math.round(10000f * removedFaces.get() / Math.max(1, faces.get())) / 100f + " %)");
+    }
+  }
+
   @FunctionalInterface
   interface ThrowingConsumer<T> {
     void consume(T buffer) throws Exception;
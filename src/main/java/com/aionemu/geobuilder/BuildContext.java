@@ -0,0 +1,28 @@
+package com.aionemu.geobuilder;
+
+import com.aionemu.geobuilder.utils.OffHeapArena;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the state which is shared between the loaders of a single build, so multiple builds can run in the same JVM.
+ */
+public class BuildContext {
+
+  public final MaterialRegistry materials;
+  public final Set<String> eventMeshes = ConcurrentHashMap.newKeySet();
+  /**
+   * Holds the vertices and faces of all loaded meshes until the mesh file is written
+   */
+  public final OffHeapArena meshArena;
+
+  public BuildContext(MaterialRegistry materials) {
+    this(materials, new OffHeapArena());
+  }
+
+  public BuildContext(MaterialRegistry materials, OffHeapArena meshArena) {
+    this.materials = materials;
+    this.meshArena = meshArena;
+  }
+}
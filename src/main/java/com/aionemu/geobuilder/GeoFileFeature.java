@@ -0,0 +1,30 @@
+package com.aionemu.geobuilder;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Optional changes of the .geo file layout. By default, .geo files consist of records up to the end of the file. If any feature is enabled, the file
+ * starts with the {@link #SIGNATURE} followed by an int bitmask of all enabled features, so readers know which layout to expect.
+ */
+public enum GeoFileFeature {
+  /**
+   * The file ends with a {@link LayerIndex} of all records
+   */
+  LAYERS(1 << 0),
+  /**
+   * Records start with the int ID of their mesh instead of its name, see {@link MeshFileWriter.Feature#MESH_IDS}
+   */
+  MESH_IDS(1 << 1);
+
+  public static final byte[] SIGNATURE = "GEOF".getBytes(StandardCharsets.US_ASCII);
+
+  private final int mask;
+
+  GeoFileFeature(int mask) {
+    this.mask = mask;
+  }
+
+  public int getMask() {
+    return mask;
+  }
+}
@@ -0,0 +1,50 @@
+package com.aionemu.geobuilder;
+
+import com.aionemu.geobuilder.meshData.CollisionIntention;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the file offsets of records per collision intention, so readers can load or query only the layers they need. Records whose mesh has
+ * multiple intentions are part of multiple layers.<br>
+ * The index is written at the end of the file: a byte layer count, then per layer its short intention ID, an int record count and the int offsets of
+ * its records. The last int of the file is the offset of the index itself.
+ */
+public class LayerIndex {
+
+  private final Map<CollisionIntention, List<Integer>> offsetsByLayer = new EnumMap<>(CollisionIntention.class);
+
+  /**
+   * Adds the record which starts at the current position of the stream to all layers of the given intention bitmask
+   */
+  public void add(int collisionIntention, DataOutputStream stream) throws IOException {
+    int offset = getOffset(stream);
+    for (CollisionIntention intention : CollisionIntention.values()) {
+      if ((collisionIntention & intention.getId()) != 0)
+        offsetsByLayer.computeIfAbsent(intention, k -> new ArrayList<>()).add(offset);
+    }
+  }
+
+  public void write(DataOutputStream stream) throws IOException {
+    int indexOffset = getOffset(stream);
+    stream.writeByte(offsetsByLayer.size());
+    for (Map.Entry<CollisionIntention, List<Integer>> e : offsetsByLayer.entrySet()) {
+      stream.writeShort(e.getKey().getId());
+      stream.writeInt(e.getValue().size());
+      for (int offset : e.getValue())
+        stream.writeInt(offset);
+    }
+    stream.writeInt(indexOffset);
+  }
+
+  private static int getOffset(DataOutputStream stream) throws IOException {
+    if (stream.size() == Integer.MAX_VALUE) // DataOutputStream stops counting there
+      throw new IOException("File is too large for a layer index");
+    return stream.size();
+  }
+}
@@ -1,6 +1,7 @@
 package com.aionemu.geobuilder;
 
 import com.aionemu.geobuilder.entries.EntityEntry;
+import com.aionemu.geobuilder.entries.EntryType;
 import com.aionemu.geobuilder.meshData.BrushLstMeshData;
 import com.aionemu.geobuilder.meshData.ObjectMeshData;
 
@@ -40,6 +41,17 @@ public class LevelData {
     return streams.flatMap(s->s);
   }
 
+  /**
+   * @return The meshes of vegetation (objects.lst) and placeable entities, which are mostly small props
+   */
+  public Stream<String> streamPropMeshFileNames() {
+    Stream<Stream<String>> streams = Stream.of(
+      objectMeshData == null ? Stream.empty() : objectMeshData.objectEntries.stream().mapToInt(o -> o.meshIndex).distinct().mapToObj(objectMeshData.meshFiles::get),
+      entityEntries.stream().filter(e -> e.type == EntryType.PLACEABLE).flatMap(EntityEntry::getAllMeshNames)
+    );
+    return streams.flatMap(s->s);
+  }
+
   @Override
   public String toString() {
     return '[' + levelId + "] " + levelName;
@@ -0,0 +1,58 @@
+package com.aionemu.geobuilder;
+
+import com.aionemu.geobuilder.pakaccessor.PakFile;
+import com.aionemu.geobuilder.utils.XmlParser;
+import org.jdom2.Element;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable lookup of the client's material names and IDs from materials.xml.
+ */
+public class MaterialRegistry {
+
+  private final Map<String, Integer> materialIdsByName;
+  private final BitSet useSkillMaterialIds;
+
+  private MaterialRegistry(Map<String, Integer> materialIdsByName, BitSet useSkillMaterialIds) {
+    this.materialIdsByName = Map.copyOf(materialIdsByName);
+    this.useSkillMaterialIds = useSkillMaterialIds;
+  }
+
+  public static MaterialRegistry load(Path clientPath) throws IOException {
+    Map<String, Integer> materialIdsByName = new HashMap<>();
+    BitSet useSkillMaterialIds = new BitSet();
+    try (PakFile pakFile = PakFile.open(clientPath.resolve("Data/Material/Material.pak"))) {
+      Element rootElement = XmlParser.parse(pakFile.unpak("materials.xml")).getRootElement();
+      for (Element material : rootElement.getChildren("material")) {
+        String materialName = material.getChildText("material_name");
+        int materialId = Integer.parseInt(material.getChildText("id"));
+        if (materialIdsByName.putIfAbsent(materialName, materialId) != null)
+          throw new IllegalArgumentException(materialName + " is already registered");
+        String materialSkillName = material.getChildText("skill_name");
+        if (materialSkillName != null || materialName.equalsIgnoreCase("mat_abyss_castle_shield"))
+          useSkillMaterialIds.set(materialId);
+      }
+    }
+    if (useSkillMaterialIds.isEmpty()) {
+      throw new IllegalStateException("Found no skill materials (materials.xml structure changed?)");
+    }
+    return new MaterialRegistry(materialIdsByName, useSkillMaterialIds);
+  }
+
+  public int getMaterialId(String matName) {
+    return materialIdsByName.getOrDefault(matName, -1);
+  }
+
+  public boolean isUseSkillMaterial(int matId) {
+    return matId >= 0 && useSkillMaterialIds.get(matId);
+  }
+
+  public int size() {
+    return materialIdsByName.size();
+  }
+}
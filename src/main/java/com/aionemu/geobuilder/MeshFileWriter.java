@@ -0,0 +1,561 @@
+package com.aionemu.geobuilder;
+
+import com.aionemu.geobuilder.meshData.CollisionProxy;
+import com.aionemu.geobuilder.meshData.MeshBounds;
+import com.aionemu.geobuilder.meshData.MeshBvh;
+import com.aionemu.geobuilder.meshData.MeshData;
+import com.aionemu.geobuilder.meshData.MeshFace;
+import com.aionemu.geobuilder.meshData.MeshLodGenerator.MeshLod;
+import com.aionemu.geobuilder.meshData.PartInstancer.PartInstance;
+import com.aionemu.geobuilder.meshData.QuantizedVertices;
+import com.aionemu.geobuilder.utils.Matrix4f;
+import com.aionemu.geobuilder.utils.Vector3;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Writes the models.mesh file. By default, it consists of mesh entries (name and parts) up to the end of the file.<br>
+ * Optional {@link Feature}s change the file layout. If any of them is enabled, the file starts with the {@link #SIGNATURE} followed by an int
+ * bitmask of all enabled features, so readers know which layout to expect.
+ */
+public class MeshFileWriter {
+
+  public static final byte[] SIGNATURE = "MESH".getBytes(StandardCharsets.US_ASCII);
+  /**
+   * Maximum distance per axis in world units between a quantized and the original vertex
+   */
+  public static final float MAX_QUANTIZATION_ERROR = QuantizedVertices.MAX_ERROR;
+
+  private final Set<Feature> features;
+  private Map<MeshData, PartInstance> partInstances = Collections.emptyMap();
+  private Map<List<MeshData>, CollisionProxy> collisionProxies = Collections.emptyMap();
+  private Map<MeshData, List<MeshLod>> lods = Collections.emptyMap();
+  private final Map<String, Integer> meshIds = new HashMap<>();
+  private int partCount, quantizedPartCount;
+
+  public MeshFileWriter(Set<Feature> features) {
+    this.features = features.isEmpty() ? EnumSet.noneOf(Feature.class) : EnumSet.copyOf(features);
+  }
+
+  /**
+   * @param partInstances Parts which are written as a reference to their canonical part plus a transform, if {@link Feature#INSTANCED_PARTS} is
+   *          enabled
+   */
+  public void setPartInstances(Map<MeshData, PartInstance> partInstances) {
+    this.partInstances = partInstances;
+  }
+
+  /**
+   * @param collisionProxies Simplified shapes of meshes, which are written if {@link Feature#COLLISION_PROXIES} is enabled
+   */
+  public void setCollisionProxies(Map<List<MeshData>, CollisionProxy> collisionProxies) {
+    this.collisionProxies = collisionProxies;
+  }
+
+  /**
+   * @param lods Simplified levels of detail of parts, which are written if {@link Feature#LODS} is enabled
+   */
+  public void setLods(Map<MeshData, List<MeshLod>> lods) {
+    this.lods = lods;
+  }
+
+  /**
+   * @param uniqueMeshes Meshes with their names. Duplicate meshes share one entry, their names are separated by "|".
+   */
+  public void write(Path meshFile, Map<List<MeshData>, String> uniqueMeshes) throws IOException {
+    partCount = 0;
+    quantizedPartCount = 0;
+    meshIds.clear();
+    int meshId = 0;
+    for (String names : uniqueMeshes.values()) {
+      for (String name : names.split("\\|"))
+        meshIds.put(name, meshId);
+      meshId++;
+    }
+    try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(meshFile)))) {
+      if (!features.isEmpty()) {
+        stream.write(SIGNATURE);
+        stream.writeInt(features.stream().mapToInt(Feature::getMask).reduce(0, (a, b) -> a | b));
+      }
+      LayerIndex layers = features.contains(Feature.LAYERS) ? new LayerIndex() : null;
+      if (features.contains(Feature.SHARED_PARTS) || features.contains(Feature.INSTANCED_PARTS)) {
+        writeSharedParts(uniqueMeshes, stream, layers);
+      } else {
+        writeMeshCount(uniqueMeshes, stream);
+        for (Map.Entry<List<MeshData>, String> e : uniqueMeshes.entrySet())
+          writeMesh(e.getValue(), e.getKey(), stream, layers);
+      }
+      if (layers != null)
+        layers.write(stream);
+    }
+  }
+
+  /**
+   * @return The ID of each mesh name in the last written file, which is the index of its mesh entry
+   */
+  public Map<String, Integer> getMeshIds() {
+    return meshIds;
+  }
+
+  /**
+   * @return The number of unique mesh parts in the last written file
+   */
+  public int getPartCount() {
+    return partCount;
+  }
+
+  /**
+   * @return The number of mesh parts in the last written file whose vertices have been quantized
+   */
+  public int getQuantizedPartCount() {
+    return quantizedPartCount;
+  }
+
+  /**
+   * Writes a table of all distinct parts, followed by the mesh entries. Each mesh entry references its parts by their index in the table. With
+   * {@link Feature#INSTANCED_PARTS}, each reference is followed by a byte flag which indicates if a transform follows (position and 3x3 matrix in the
+   * same layout as in .geo files).
+   */
+  private void writeSharedParts(Map<List<MeshData>, String> uniqueMeshes, DataOutputStream stream, LayerIndex layers) throws IOException {
+    boolean instancing = features.contains(Feature.INSTANCED_PARTS);
+    Map<MeshData, Integer> partIds = new LinkedHashMap<>(); // ordered for repeatable file hashes
+    for (List<MeshData> parts : uniqueMeshes.keySet()) {
+      for (MeshData part : parts)
+        partIds.putIfAbsent(instancing ? getCanonicalPart(part) : part, partIds.size());
+    }
+    partCount = partIds.size();
+    stream.writeInt(partIds.size());
+    for (MeshData part : partIds.keySet())
+      writeMeshData(part, stream);
+    writeMeshCount(uniqueMeshes, stream);
+    for (Map.Entry<List<MeshData>, String> e : uniqueMeshes.entrySet()) {
+      addToLayers(e.getKey(), stream, layers);
+      writeName(e.getValue(), stream);
+      if (features.contains(Feature.BOUNDS))
+        writeBounds(getBounds(e.getKey()), stream);
+      if (features.contains(Feature.COLLISION_PROXIES))
+        writeCollisionProxy(collisionProxies.get(e.getKey()), stream);
+      writePartCount(e.getKey(), stream);
+      for (MeshData part : e.getKey()) {
+        if (instancing) {
+          stream.writeInt(partIds.get(getCanonicalPart(part)));
+          writeTransform(partInstances.get(part), stream);
+        } else {
+          stream.writeInt(partIds.get(part));
+        }
+      }
+    }
+  }
+
+  private void writeMeshCount(Map<List<MeshData>, String> uniqueMeshes, DataOutputStream stream) throws IOException {
+    if (features.contains(Feature.MESH_IDS))
+      stream.writeInt(uniqueMeshes.size());
+  }
+
+  /**
+   * @return The part as readers reconstruct it, with quantized and/or instance transformed vertices. This is the part itself if neither applies.
+   */
+  public MeshData getDecodedPart(MeshData part) {
+    PartInstance instance = features.contains(Feature.INSTANCED_PARTS) ? partInstances.get(part) : null;
+    MeshData source = instance == null ? part : instance.canonicalPart();
+    if (instance == null && !features.contains(Feature.QUANTIZED_VERTICES))
+      return part;
+    List<Vector3> vertices = features.contains(Feature.QUANTIZED_VERTICES) ? QuantizedVertices.getDecodedVertices(source.vertices) : source.vertices;
+    if (instance != null) {
+      List<Vector3> transformed = new ArrayList<>(vertices.size());
+      for (Vector3 vertex : vertices)
+        transformed.add(Vector3.transform(vertex, instance.transform())); // same float math as the server
+      vertices = transformed;
+    }
+    MeshData decoded = new MeshData();
+    decoded.vertices = vertices;
+    decoded.faces = source.faces;
+    decoded.materialId = source.materialId;
+    decoded.collisionIntention = source.collisionIntention;
+    return decoded;
+  }
+
+  /**
+   * @return The bounds of the parts as readers reconstruct them, so they contain all decoded vertices
+   */
+  private MeshBounds getBounds(List<MeshData> parts) {
+    return MeshBounds.of(parts.stream().map(this::getDecodedPart).toList());
+  }
+
+  private MeshData getCanonicalPart(MeshData part) {
+    PartInstance instance = partInstances.get(part);
+    return instance == null ? part : instance.canonicalPart();
+  }
+
+  private void writeTransform(PartInstance instance, DataOutputStream stream) throws IOException {
+    if (instance == null) {
+      stream.writeByte(0);
+      return;
+    }
+    stream.writeByte(1);
+    Matrix4f matrix = instance.transform();
+    stream.writeFloat(matrix.m41);
+    stream.writeFloat(matrix.m42);
+    stream.writeFloat(matrix.m43);
+    stream.writeFloat(matrix.m11);
+    stream.writeFloat(matrix.m21);
+    stream.writeFloat(matrix.m31);
+    stream.writeFloat(matrix.m12);
+    stream.writeFloat(matrix.m22);
+    stream.writeFloat(matrix.m32);
+    stream.writeFloat(matrix.m13);
+    stream.writeFloat(matrix.m23);
+    stream.writeFloat(matrix.m33);
+  }
+
+  private void writeMesh(String path, List<MeshData> data, DataOutputStream stream, LayerIndex layers) throws IOException {
+    addToLayers(data, stream, layers);
+    writeName(path, stream);
+    if (features.contains(Feature.BOUNDS))
+      writeBounds(getBounds(data), stream);
+    if (features.contains(Feature.COLLISION_PROXIES))
+      writeCollisionProxy(collisionProxies.get(data), stream);
+    writePartCount(data, stream);
+    for (MeshData mesh : data)
+      writeMeshData(mesh, stream);
+    partCount += data.size();
+  }
+
+  private void addToLayers(List<MeshData> parts, DataOutputStream stream, LayerIndex layers) throws IOException {
+    if (layers != null)
+      layers.add(getCollisionIntentions(parts), stream);
+  }
+
+  /**
+   * @return The collision intentions of all parts
+   */
+  public static int getCollisionIntentions(List<MeshData> parts) {
+    int collisionIntentions = 0;
+    for (MeshData part : parts)
+      collisionIntentions |= part.collisionIntention;
+    return collisionIntentions;
+  }
+
+  private void writeName(String path, DataOutputStream stream) throws IOException {
+    byte[] nameBytes = path.getBytes(StandardCharsets.US_ASCII);
+    if (nameBytes.length > 0xFFFF)
+      throw new IOException("Data doesn't fit in short (nameBytes.length = " + nameBytes.length + ")");
+    stream.writeShort(nameBytes.length);
+    stream.write(nameBytes);
+  }
+
+  private void writePartCount(List<MeshData> data, DataOutputStream stream) throws IOException {
+    if (data.size() > 0xFF)
+      throw new IOException("Data doesn't fit in byte (data.size() = " + data.size() + ")");
+    stream.writeByte(data.size());
+  }
+
+  private void writeMeshData(MeshData mesh, DataOutputStream stream) throws IOException {
+    if (features.contains(Feature.BOUNDS))
+      writeBounds(getDecodedPart(mesh).getBounds(), stream);
+    writeGeometry(mesh, stream);
+    stream.writeByte(mesh.materialId);
+    stream.writeByte(mesh.collisionIntention);
+    if (features.contains(Feature.LODS))
+      writeLods(lods.getOrDefault(mesh, Collections.emptyList()), stream);
+  }
+
+  /**
+   * Writes the level count, followed by the max error (float) and geometry of each level, in descending detail.
+   */
+  private void writeLods(List<MeshLod> meshLods, DataOutputStream stream) throws IOException {
+    if (meshLods.size() > 0xFF)
+      throw new IOException("Data doesn't fit in byte (meshLods.size() = " + meshLods.size() + ")");
+    stream.writeByte(meshLods.size());
+    for (MeshLod lod : meshLods) {
+      stream.writeFloat(lod.maxError());
+      writeGeometry(lod.mesh(), stream);
+    }
+  }
+
+  /**
+   * Writes the vertices and faces, followed by the optional per face data.
+   */
+  private void writeGeometry(MeshData mesh, DataOutputStream stream) throws IOException {
+    if (mesh.vertices.size() > 0xFFFF)
+      throw new IOException("Data doesn't fit in short (mesh.vertices.size() = " + mesh.vertices.size() + ")");
+    stream.writeShort(mesh.vertices.size());
+    List<Vector3> vertices = mesh.vertices; // as decoded by readers
+    if (features.contains(Feature.QUANTIZED_VERTICES))
+      vertices = writeQuantizedVertices(mesh.vertices, stream);
+    else
+      writeVertices(mesh.vertices, stream);
+    if (mesh.faces.size() > 0xFFFF)
+      throw new IOException("Data doesn't fit in short (mesh.faces.size() = " + mesh.faces.size() + ")");
+    stream.writeShort(mesh.faces.size());
+    MeshBvh bvh = features.contains(Feature.BVH) ? new MeshBvh(mesh.faces, vertices) : null;
+    List<MeshFace> faces = bvh == null ? mesh.faces : bvh.getOrderedFaces();
+    int maxIndex = mesh.getMaxFaceVertexIndex();
+    if (maxIndex > 0xFFFF)
+      throw new IOException("MeshFace index " + maxIndex + " doesn't fit in short");
+    if (features.contains(Feature.COMPRESSED_INDICES)) {
+      writeCompressedFaces(faces, stream);
+    } else if (maxIndex > 0xFF) {
+      stream.writeByte(2);
+      for (MeshFace face : faces) {
+        stream.writeShort(face.v0);
+        stream.writeShort(face.v1);
+        stream.writeShort(face.v2);
+      }
+    } else {
+      stream.writeByte(1);
+      for (MeshFace face : faces) {
+        stream.writeByte(face.v0);
+        stream.writeByte(face.v1);
+        stream.writeByte(face.v2);
+      }
+    }
+    if (bvh != null)
+      writeBvh(bvh, stream);
+    if (features.contains(Feature.FACE_PLANES))
+      writeFacePlanes(faces, vertices, stream);
+  }
+
+  /**
+   * Writes the byte length of the encoded faces, followed by three varints per face: The zigzag encoded difference between the first index and the
+   * first index of the previous face, then the unsigned differences of the other two indices to the first one. Faces are rotated to start with their
+   * smallest index, which keeps their winding and makes the last two differences positive. Since faces are sorted, most differences fit in one byte.
+   */
+  private void writeCompressedFaces(List<MeshFace> faces, DataOutputStream stream) throws IOException {
+    ByteArrayOutputStream encoded = new ByteArrayOutputStream(faces.size() * 3);
+    int previous = 0;
+    for (MeshFace face : faces) {
+      int v0 = face.v0, v1 = face.v1, v2 = face.v2;
+      if (v1 < v0 && v1 < v2) {
+        v0 = face.v1;
+        v1 = face.v2;
+        v2 = face.v0;
+      } else if (v2 < v0 && v2 < v1) {
+        v0 = face.v2;
+        v1 = face.v0;
+        v2 = face.v1;
+      }
+      writeVarInt(zigzag(v0 - previous), encoded);
+      writeVarInt(v1 - v0, encoded);
+      writeVarInt(v2 - v0, encoded);
+      previous = v0;
+    }
+    stream.writeInt(encoded.size());
+    encoded.writeTo(stream);
+  }
+
+  private static int zigzag(int value) {
+    return value << 1 ^ value >> 31;
+  }
+
+  /**
+   * Writes 7 bits per byte, starting with the lowest ones. The highest bit of each byte indicates if more bytes follow.
+   */
+  private static void writeVarInt(int value, ByteArrayOutputStream stream) {
+    while ((value & ~0x7F) != 0) {
+      stream.write(value & 0x7F | 0x80);
+      value >>>= 7;
+    }
+    stream.write(value);
+  }
+
+  /**
+   * Writes the min and max corner of the bounding box, followed by the center and radius of the bounding sphere.
+   */
+  private void writeBounds(MeshBounds bounds, DataOutputStream stream) throws IOException {
+    for (Vector3 vec : new Vector3[] { bounds.min, bounds.max, bounds.center }) {
+      stream.writeFloat(vec.x);
+      stream.writeFloat(vec.y);
+      stream.writeFloat(vec.z);
+    }
+    stream.writeFloat(bounds.radius);
+  }
+
+  /**
+   * Writes the proxy type byte (0 if there is none), followed by its shape:
+   * <ul>
+   * <li>Box: center, local x, y and z axis, half extents (3 floats each)</li>
+   * <li>Capsule: segment start and end (3 floats each), radius</li>
+   * <li>Convex hull: byte vertex count, vertices (3 floats each), byte face count, faces (3 byte indices each)</li>
+   * </ul>
+   */
+  private void writeCollisionProxy(CollisionProxy proxy, DataOutputStream stream) throws IOException {
+    if (proxy == null) {
+      stream.writeByte(0);
+      return;
+    }
+    stream.writeByte(proxy.getType());
+    switch (proxy) {
+      case CollisionProxy.Box box -> {
+        writeVector(box.center(), stream);
+        for (Vector3 axis : box.axes())
+          writeVector(axis, stream);
+        writeVector(box.halfExtents(), stream);
+      }
+      case CollisionProxy.Capsule capsule -> {
+        writeVector(capsule.start(), stream);
+        writeVector(capsule.end(), stream);
+        stream.writeFloat(capsule.radius());
+      }
+      case CollisionProxy.ConvexHull hull -> {
+        if (hull.vertices().length > 0xFF || hull.faces().length > 0xFF)
+          throw new IOException("Convex hull doesn't fit in byte (vertices: " + hull.vertices().length + ", faces: " + hull.faces().length + ")");
+        stream.writeByte(hull.vertices().length);
+        for (Vector3 vertex : hull.vertices())
+          writeVector(vertex, stream);
+        stream.writeByte(hull.faces().length);
+        for (MeshFace face : hull.faces()) {
+          stream.writeByte(face.v0);
+          stream.writeByte(face.v1);
+          stream.writeByte(face.v2);
+        }
+      }
+    }
+  }
+
+  private void writeVector(Vector3 vec, DataOutputStream stream) throws IOException {
+    stream.writeFloat(vec.x);
+    stream.writeFloat(vec.y);
+    stream.writeFloat(vec.z);
+  }
+
+  /**
+   * Writes the node count followed by the nodes in depth-first order. Each node consists of its bounding box (min and max corner), an int reference
+   * (leaf: index of its first face, inner node: index of its second child, the first child follows the node) and a byte face count (0 for inner
+   * nodes).
+   */
+  private void writeBvh(MeshBvh bvh, DataOutputStream stream) throws IOException {
+    stream.writeInt(bvh.getNodeCount());
+    for (int node = 0; node < bvh.getNodeCount(); node++) {
+      for (float value : bvh.getNodeBounds(node))
+        stream.writeFloat(value);
+      stream.writeInt(bvh.getNodeReference(node));
+      stream.writeByte(bvh.getNodeFaceCount(node));
+    }
+  }
+
+  /**
+   * Writes the plane of each face in the order of the written faces: the unit normal (v1 - v0) x (v2 - v0) and d, so that normal * p = d for all
+   * points p in the plane. Degenerate faces are written with a zero normal and d.
+   */
+  private void writeFacePlanes(List<MeshFace> faces, List<Vector3> vertices, DataOutputStream stream) throws IOException {
+    for (MeshFace face : faces) {
+      Vector3 a = vertices.get(face.v0), b = vertices.get(face.v1), c = vertices.get(face.v2);
+      double abx = b.x - a.x, aby = b.y - a.y, abz = b.z - a.z;
+      double acx = c.x - a.x, acy = c.y - a.y, acz = c.z - a.z;
+      double nx = aby * acz - abz * acy, ny = abz * acx - abx * acz, nz = abx * acy - aby * acx;
+      double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+      if (length > 0) {
+        nx /= length;
+        ny /= length;
+        nz /= length;
+      }
+      stream.writeFloat((float) nx);
+      stream.writeFloat((float) ny);
+      stream.writeFloat((float) nz);
+      stream.writeFloat((float) (nx * a.x + ny * a.y + nz * a.z));
+    }
+  }
+
+  private void writeVertices(List<Vector3> vertices, DataOutputStream stream) throws IOException {
+    for (Vector3 vec : vertices) {
+      stream.writeFloat(vec.x);
+      stream.writeFloat(vec.y);
+      stream.writeFloat(vec.z);
+    }
+  }
+
+  /**
+   * Writes a byte flag, which indicates if the vertices are quantized. Quantized vertices are preceded by the minimum corner of their bounding box
+   * and the scale per axis (3 floats each) and are stored as 3 unsigned shorts, decoded as min + value * scale. Parts whose decoded vertices would
+   * deviate by more than {@link #MAX_QUANTIZATION_ERROR} are written as floats.
+   *
+   * @return The vertices as readers decode them
+   */
+  private List<Vector3> writeQuantizedVertices(List<Vector3> vertices, DataOutputStream stream) throws IOException {
+    QuantizedVertices quantized = QuantizedVertices.of(vertices);
+    if (quantized == null) {
+      stream.writeByte(0);
+      writeVertices(vertices, stream);
+      return vertices;
+    }
+    stream.writeByte(1);
+    for (float value : quantized.min)
+      stream.writeFloat(value);
+    for (float value : quantized.scale)
+      stream.writeFloat(value);
+    for (short value : quantized.values)
+      stream.writeShort(value);
+    quantizedPartCount++;
+    return quantized.decode();
+  }
+
+  public enum Feature {
+    /**
+     * Identical parts of different meshes are stored once in a part table, meshes reference them by their index
+     */
+    SHARED_PARTS(1 << 0),
+    /**
+     * Like {@link #SHARED_PARTS}, but rotated or translated copies of a part also reference it, together with their transform
+     */
+    INSTANCED_PARTS(1 << 1),
+    /**
+     * Vertices are stored as 16-bit coordinates relative to the bounding box of their part, see {@link MeshFileWriter#MAX_QUANTIZATION_ERROR}
+     */
+    QUANTIZED_VERTICES(1 << 2),
+    /**
+     * Each part contains a bounding volume hierarchy after its faces, so servers don't need to build one at startup, see {@link MeshBvh}
+     */
+    BVH(1 << 3),
+    /**
+     * Each mesh entry (after its name) and each part (before its vertices) contains its bounding box (min and max corner) and bounding sphere (center
+     * and radius) of the vertices as readers decode them, including quantization and instance transforms
+     */
+    BOUNDS(1 << 4),
+    /**
+     * Face indices are delta and varint encoded instead of the index size byte and raw indices
+     */
+    COMPRESSED_INDICES(1 << 5),
+    /**
+     * The file ends with a {@link LayerIndex} of all mesh entries, grouped by the collision intentions of their parts
+     */
+    LAYERS(1 << 6),
+    /**
+     * Each mesh entry of vegetation and placeables contains a box, capsule or convex hull which approximates all its decoded parts (before the part
+     * count), see {@link com.aionemu.geobuilder.meshData.CollisionProxyFitter}
+     */
+    COLLISION_PROXIES(1 << 7),
+    /**
+     * Each part contains the plane (unit normal and distance) of each face after its faces (and BVH), so servers don't need to compute them per
+     * query
+     */
+    FACE_PLANES(1 << 8),
+    /**
+     * Each part ends with simplified levels of detail, each with its max error and the same vertex and face layout as the part, see
+     * {@link com.aionemu.geobuilder.meshData.MeshLodGenerator}
+     */
+    LODS(1 << 9),
+    /**
+     * The mesh entries are preceded by their int count, so readers can store them in an array. The index of an entry is the ID by which .geo files
+     * reference it, see {@link GeoFileFeature#MESH_IDS}
+     */
+    MESH_IDS(1 << 10);
+
+    private final int mask;
+
+    Feature(int mask) {
+      this.mask = mask;
+    }
+
+    public int getMask() {
+      return mask;
+    }
+  }
+}
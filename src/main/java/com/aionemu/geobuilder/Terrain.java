@@ -1,7 +1,5 @@
 package com.aionemu.geobuilder;
 
-import com.aionemu.geobuilder.loaders.CgfLoader;
-
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.color.ColorSpace;
@@ -33,7 +31,7 @@ public class Terrain {
     this.heightmapUnitSize = heightmapUnitSize;
   }
 
-  public void load(ByteBuffer landMapH32, boolean allTerrainMaterials) throws IOException {
+  public void load(ByteBuffer landMapH32, MaterialRegistry materialRegistry, boolean allTerrainMaterials) throws IOException {
     boolean hasMaterials = false;
     heightmap = ShortBuffer.allocate(heightmapXSize * heightmapYSize);
     materials = ByteBuffer.allocate(heightmap.capacity());
@@ -47,7 +45,7 @@ public class Terrain {
       int materialIndex = Byte.toUnsignedInt(landMapH32.get());
       boolean isTerrainCutout = materialIndex == 0x3F;
       byte materialId = isTerrainCutout ? 0 : materialIds[materialIndex];
-      if (!allTerrainMaterials && !CgfLoader.isUseSkillMaterial(Byte.toUnsignedInt(materialId)))
+      if (!allTerrainMaterials && !materialRegistry.isUseSkillMaterial(Byte.toUnsignedInt(materialId)))
         materialId = 0;
       if (materialId != 0 && !hasMaterials)
         hasMaterials = true;
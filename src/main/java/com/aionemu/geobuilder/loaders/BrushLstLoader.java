@@ -1,5 +1,6 @@
 package com.aionemu.geobuilder.loaders;
 
+import com.aionemu.geobuilder.BuildContext;
 import com.aionemu.geobuilder.entries.BrushEntry;
 import com.aionemu.geobuilder.entries.EntryType;
 import com.aionemu.geobuilder.meshData.BrushLstMeshData;
@@ -9,18 +10,15 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class BrushLstLoader {
 
-  public static final Set<String> EVENT_MESHES = ConcurrentHashMap.newKeySet();
   private static final byte[] SIGNATURE = "CRY".getBytes();
 
   private BrushLstLoader() {
   }
 
-  public static BrushLstMeshData load(ByteBuffer brushLst) throws IOException {
+  public static BrushLstMeshData load(ByteBuffer brushLst, BuildContext context) throws IOException {
     BrushLstMeshData meshData = new BrushLstMeshData();
 
     byte[] signature = new byte[SIGNATURE.length];
@@ -92,7 +90,7 @@ public class BrushLstLoader {
       if (eventType > 0) {
         entry.eventType = (byte) eventType;
         entry.type = EntryType.EVENT;
-        EVENT_MESHES.add(meshData.meshFileNames.get(entry.meshIndex));
+        context.eventMeshes.add(meshData.meshFileNames.get(entry.meshIndex));
       }
       meshData.brushEntries.add(entry);
       brushLst.position(brushLst.position() + 4 * (meshDataBlockSize - 15));
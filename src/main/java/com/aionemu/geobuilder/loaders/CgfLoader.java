@@ -1,20 +1,17 @@
 package com.aionemu.geobuilder.loaders;
 
+import com.aionemu.geobuilder.MaterialRegistry;
 import com.aionemu.geobuilder.cgfData.*;
 import com.aionemu.geobuilder.meshData.CollisionIntention;
 import com.aionemu.geobuilder.meshData.MeshData;
 import com.aionemu.geobuilder.meshData.MeshFace;
-import com.aionemu.geobuilder.pakaccessor.PakFile;
 import com.aionemu.geobuilder.utils.Matrix4f;
 import com.aionemu.geobuilder.utils.Quaternion;
 import com.aionemu.geobuilder.utils.Vector3;
-import com.aionemu.geobuilder.utils.XmlParser;
-import org.jdom2.Element;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Path;
 import java.util.*;
 
 /**
@@ -30,38 +27,22 @@ import java.util.*;
 public class CgfLoader {
 
   private static final byte[] SIGNATURE = "NCAion\0\0".getBytes();
-  private static final Map<String, Integer> materialNamesAndIds = new HashMap<>();
-  private static final Set<Integer> useSkillMaterialIds = new HashSet<>();
+  private static final int SKIPPED_FACE_BUCKET = -1;
+  private static final int UNCLASSIFIED_FACE_BUCKET = -2;
+  private final MaterialRegistry materials;
   private final List<CgfChunkHeader> chunkHeaders = new ArrayList<>();
   private final Map<Integer, CgfMaterialData> materialDataByChunkId = new HashMap<>();
   private final List<CgfNodeData> nodes = new ArrayList<>();
   private final List<Integer> materialIdx = new ArrayList<>();
+  private int[] faceBuckets; // face bucket per material index (-1 = face is skipped, -2 = material is not classified yet)
+  private int[] bucketCollisionIntentions, bucketMaterialIds; // mesh properties per face bucket
   private String[] boneNames;
   private final List<float[]> boneInitialPos = new ArrayList<>();
   private final List<CgfBoneAnimData> bones = new ArrayList<>();
   private final HashMap<Integer, CgfBoneMeshData> boneMeshes = new HashMap<>();
 
-  public static int loadMaterials(Path clientPath) throws IOException {
-    try (PakFile pakFile = PakFile.open(clientPath.resolve("Data/Material/Material.pak"))) {
-      Element rootElement = XmlParser.parse(pakFile.unpak("materials.xml")).getRootElement();
-      for (Element material : rootElement.getChildren("material")) {
-        String materialName = material.getChildText("material_name");
-        int materialId = Integer.parseInt(material.getChildText("id"));
-        if (materialNamesAndIds.putIfAbsent(materialName, materialId) != null)
-          throw new IllegalArgumentException(materialName + " is already registered");
-        String materialSkillName = material.getChildText("skill_name");
-        if (materialSkillName != null || materialName.equalsIgnoreCase("mat_abyss_castle_shield"))
-          useSkillMaterialIds.add(materialId);
-      }
-    }
-    if (useSkillMaterialIds.isEmpty()) {
-      throw new IllegalStateException("Found no skill materials (materials.xml structure changed?)");
-    }
-    return materialNamesAndIds.size();
-  }
-
-  public static int getMaterialId(String matName) {
-    return materialNamesAndIds.getOrDefault(matName, -1);
+  public CgfLoader(MaterialRegistry materials) {
+    this.materials = materials;
   }
 
   public void load(ByteBuffer bb) throws IOException {
@@ -103,6 +84,7 @@ public class CgfLoader {
         }
       }
     }
+    initFaceBuckets();
 
     for (CgfChunkHeader chunkHeader : chunkHeaders) {
       if (chunkHeader.chunkType == 0xCCCC000B) { // Node
@@ -222,9 +204,7 @@ public class CgfLoader {
       meshFace.v1 = bb.getInt();
       meshFace.v2 = bb.getInt();
 
-      int matIdx = bb.getInt();
-      CgfMaterialData material = materialDataByChunkId.get(materialIdx.get(matIdx));
-      if (isMaterialCollideable(material) || isUseSkillMaterial(material.materialId)) {
+      if (getFaceBucket(bb.getInt()) != SKIPPED_FACE_BUCKET) {
         result.indices.add(meshFace);
       }
       bb.position(bb.position() + 4); //skip smoothing group
@@ -295,7 +275,7 @@ public class CgfLoader {
     if (splitIndex != -1) {
       matName = name.substring(splitIndex + 1);
     }
-    result.materialId = getMaterialId(matName);
+    result.materialId = materials.getMaterialId(matName);
     float collision = bb.getFloat();
     if (collision != 0f && collision != 1f) {
       throw new IOException("expected 0.0 or 1.0 for collision flag but found: " + collision);
@@ -383,6 +363,7 @@ public class CgfLoader {
     CgfMeshData result = new CgfMeshData();
     result.vertices = new ArrayList<>(verticesCount);
     result.indices = new HashMap<>();
+    List<ArrayList<MeshFace>> facesByBucket = new ArrayList<>(Collections.nCopies(faceBuckets.length, null));
     for (int i = 0; i < verticesCount; i++) {
       Vector3 vec = new Vector3();
       vec.x = bb.getFloat() / 100f;
@@ -398,20 +379,74 @@ public class CgfLoader {
       meshFace.v1 = bb.getInt();
       meshFace.v2 = bb.getInt();
 
-      int matIdx = bb.getInt();
-      CgfMaterialData material = materialDataByChunkId.get(materialIdx.get(matIdx));
-      if (isMaterialCollideable(material) || isUseSkillMaterial(material.materialId)) {
-        if (isUseSkillMaterial(material.materialId) || material.materialId >= 6 && material.materialId <= 9) {
-          result.indices.computeIfAbsent(matIdx, k -> new ArrayList<>()).add(meshFace);
-        } else {
-          result.indices.computeIfAbsent(0, k -> new ArrayList<>()).add(meshFace);
+      int bucket = getFaceBucket(bb.getInt());
+      if (bucket != SKIPPED_FACE_BUCKET) {
+        ArrayList<MeshFace> faces = facesByBucket.get(bucket);
+        if (faces == null) {
+          faces = new ArrayList<>();
+          facesByBucket.set(bucket, faces);
         }
+        faces.add(meshFace);
       }
       bb.position(bb.position() + 4); //skip smoothing group
     }
+    for (int bucket = 0; bucket < facesByBucket.size(); bucket++) {
+      if (facesByBucket.get(bucket) != null)
+        result.indices.put(bucket, facesByBucket.get(bucket));
+    }
     return result;
   }
 
+  private void initFaceBuckets() {
+    faceBuckets = new int[materialIdx.size()];
+    Arrays.fill(faceBuckets, UNCLASSIFIED_FACE_BUCKET);
+    bucketCollisionIntentions = new int[materialIdx.size()];
+    Arrays.fill(bucketCollisionIntentions, CollisionIntention.PHYSICAL.getId()); // bucket 0 keeps these if material 0 is unused
+    bucketMaterialIds = new int[materialIdx.size()];
+  }
+
+  /**
+   * Classifies each material once on first use, so face decoding only needs to look up precomputed values by material index. Materials no face
+   * references are never classified, since {@link #isMaterialCollideable(CgfMaterialData)} can't handle all of them.<br>
+   * Faces of skill materials and materials 6-9 are grouped by their own material index, all other collidable faces share bucket 0.
+   * Non-collidable faces are skipped.
+   *
+   * @return The face bucket of the material at the given index
+   */
+  private int getFaceBucket(int i) {
+    if (faceBuckets[i] == UNCLASSIFIED_FACE_BUCKET) {
+      CgfMaterialData matData = materialDataByChunkId.get(materialIdx.get(i));
+      boolean isSkillMaterial = isUseSkillMaterial(matData.materialId);
+      boolean isCollideable = isMaterialCollideable(matData);
+      if (!isCollideable && !isSkillMaterial)
+        faceBuckets[i] = SKIPPED_FACE_BUCKET;
+      else if (isSkillMaterial || matData.materialId >= 6 && matData.materialId <= 9)
+        faceBuckets[i] = i;
+      else
+        faceBuckets[i] = 0;
+
+      int collisionIntention = CollisionIntention.PHYSICAL.getId();
+      int materialId = 0;
+      if (isSkillMaterial) {
+        if (!isCollideable || matData.materialId >= 14 && matData.materialId <= 16) { // exception for abyss core & abyss bases
+          collisionIntention = 0;
+        }
+        collisionIntention |= CollisionIntention.MATERIAL.getId();
+        materialId = matData.materialId;
+      }
+      if (matData.materialId >= 1 && matData.materialId <= 9) {
+        collisionIntention = 0;
+        if (matData.materialId <= 5) {
+          collisionIntention |= CollisionIntention.PHYSICAL_SEE_THROUGH.getId(); // players and npcs cant move but see through
+        }
+        collisionIntention |= CollisionIntention.WALK.getId(); // npcs cannot walk through
+      }
+      bucketCollisionIntentions[i] = collisionIntention;
+      bucketMaterialIds[i] = materialId;
+    }
+    return faceBuckets[i];
+  }
+
   private CgfHelperData loadHelperData(int objectId, ByteBuffer bb) {
     if (chunkHeaders.get(objectId).chunkType != 0xCCCC0001) {
       return null;
@@ -437,6 +472,9 @@ public class CgfLoader {
     materialDataByChunkId.clear();
     nodes.clear();
     materialIdx.clear();
+    faceBuckets = null;
+    bucketCollisionIntentions = null;
+    bucketMaterialIds = null;
     boneNames = null;
     boneInitialPos.clear();
     bones.clear();
@@ -500,22 +538,8 @@ public class CgfLoader {
           MeshData meshData = new MeshData();
           meshData.vertices = vertices;
           meshData.faces = face.getValue();
-
-          CgfMaterialData matData = materialDataByChunkId.get(materialIdx.get(face.getKey()));
-          if (isUseSkillMaterial(matData.materialId)) {
-            if (!isMaterialCollideable(matData) || matData.materialId >= 14 && matData.materialId <= 16) { // exception for abyss core & abyss bases
-              meshData.collisionIntention = 0;
-            }
-            meshData.collisionIntention |= CollisionIntention.MATERIAL.getId();
-            meshData.materialId = matData.materialId;
-          }
-          if (matData.materialId >= 1 && matData.materialId <= 9) {
-            meshData.collisionIntention = 0;
-            if (matData.materialId <= 5) {
-              meshData.collisionIntention |= CollisionIntention.PHYSICAL_SEE_THROUGH.getId(); // players and npcs cant move but see through
-            }
-            meshData.collisionIntention |= CollisionIntention.WALK.getId(); // npcs cannot walk through
-          }
+          meshData.collisionIntention = bucketCollisionIntentions[face.getKey()];
+          meshData.materialId = bucketMaterialIds[face.getKey()];
           meshes.add(meshData);
         }
       }
@@ -555,8 +579,8 @@ public class CgfLoader {
     return 0;
   }
 
-  public static boolean isUseSkillMaterial(int matId) {
-    return useSkillMaterialIds.contains(matId);
+  public boolean isUseSkillMaterial(int matId) {
+    return materials.isUseSkillMaterial(matId);
   }
 
   public boolean isCollideable(CgfNodeData node) {
@@ -621,7 +645,7 @@ public class CgfLoader {
     // TODO - validate keyframe start times are ascending and within global range.
     // TODO - validate controller type. TBC3 for pos, scale, TBCQ for rot, others unexpected...
     // TODO - validate cga vs cgf... some doors have .cgf extension...
-    CgfLoader clone = new CgfLoader();
+    CgfLoader clone = new CgfLoader(materials);
     bb.position(0);
     clone.load(bb);
     for (CgfNodeData node : clone.nodes) {
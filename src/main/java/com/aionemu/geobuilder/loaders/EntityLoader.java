@@ -1,5 +1,6 @@
 package com.aionemu.geobuilder.loaders;
 
+import com.aionemu.geobuilder.BuildContext;
 import com.aionemu.geobuilder.entries.*;
 import com.aionemu.geobuilder.utils.PathSanitizer;
 import com.aionemu.geobuilder.utils.Vector3;
@@ -17,7 +18,7 @@ public class EntityLoader {
   private EntityLoader() {
   }
 
-  public static List<EntityEntry> loadPlaceables(ByteBuffer mission, Map<String, Short> addresses) throws Exception {
+  public static List<EntityEntry> loadPlaceables(ByteBuffer mission, Map<String, Short> addresses, BuildContext context) throws Exception {
     Document document = XmlParser.parse(mission);
     Element rootNode = document.getRootElement();
     List<Element> entities = rootNode.getChild("Objects").getChildren("Entity");
@@ -90,7 +91,7 @@ public class EntityLoader {
               throw new Exception("Unknown event type " + eventType + " for Basic Entity " + node.getAttributeValue("EntityId"));
             }
             entry.type = EntryType.EVENT;
-            BrushLstLoader.EVENT_MESHES.add(entry.mesh);
+            context.eventMeshes.add(entry.mesh);
           }
           entityEntries.add(entry);
         }
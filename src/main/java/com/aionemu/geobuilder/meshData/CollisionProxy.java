@@ -0,0 +1,51 @@
+package com.aionemu.geobuilder.meshData;
+
+import com.aionemu.geobuilder.utils.Vector3;
+
+/**
+ * Simple shape which approximates the surface of a whole mesh, so collision checks can test it instead of every triangle. See
+ * {@link CollisionProxyFitter}.
+ */
+public sealed interface CollisionProxy {
+
+  /**
+   * @return The ID of the shape type in the mesh file
+   */
+  int getType();
+
+  /**
+   * Oriented box
+   *
+   * @param axes Unit length local x, y and z axis
+   * @param halfExtents Half the size along each local axis
+   */
+  record Box(Vector3 center, Vector3[] axes, Vector3 halfExtents) implements CollisionProxy {
+
+    @Override
+    public int getType() {
+      return 1;
+    }
+  }
+
+  /**
+   * All points within the radius of the segment from start to end
+   */
+  record Capsule(Vector3 start, Vector3 end, float radius) implements CollisionProxy {
+
+    @Override
+    public int getType() {
+      return 2;
+    }
+  }
+
+  /**
+   * Convex hull whose faces have outward pointing normals (v1 - v0) x (v2 - v0)
+   */
+  record ConvexHull(Vector3[] vertices, MeshFace[] faces) implements CollisionProxy {
+
+    @Override
+    public int getType() {
+      return 3;
+    }
+  }
+}
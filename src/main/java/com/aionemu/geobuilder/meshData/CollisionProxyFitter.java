@@ -0,0 +1,611 @@
+package com.aionemu.geobuilder.meshData;
+
+import com.aionemu.geobuilder.utils.EigenDecomposition;
+import com.aionemu.geobuilder.utils.IndexSorter;
+import com.aionemu.geobuilder.utils.LongHashSet;
+import com.aionemu.geobuilder.utils.Vector3;
+
+import java.util.*;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Fits an oriented box, capsule or convex hull to small meshes, in this order, and returns the first one which matches the mesh surface. A proxy
+ * matches if every mesh vertex lies within the maximum error of the proxy surface and sample points on the proxy surface (face grids, rings and
+ * triangle midpoints) lie within the maximum error of a mesh triangle. This rejects concave meshes for hulls and meshes which only cover a part of
+ * the proxy, like open crates.<br>
+ * Box axes are either the principal axes of the vertices, the mesh axes or aligned to the normal and an edge of one of the largest triangles,
+ * whichever gives the box with the smallest surface. Principal axes alone are ambiguous for symmetric meshes like cubes. Capsules run along the
+ * principal axis.
+ */
+public class CollisionProxyFitter {
+
+  public static final int MAX_FACES = 1024;
+  private static final int MAX_HULL_VERTICES = 64;
+  private static final int GRID_SAMPLES = 5;
+  private static final int RING_SAMPLES = 12;
+  private static final int MAX_TRIANGLE_FRAMES = 8;
+
+  private final float maxError;
+
+  /**
+   * @param maxError Maximum distance in world units between the proxy and the mesh surface
+   */
+  public CollisionProxyFitter(float maxError) {
+    if (!(maxError > 0))
+      throw new IllegalArgumentException("Collision proxy error must be positive: " + maxError);
+    this.maxError = maxError;
+  }
+
+  /**
+   * @return The simplest proxy which matches the surface of all parts, or null if none does, the mesh has more than {@link #MAX_FACES} faces or its
+   *         parts have different collision intentions
+   */
+  public CollisionProxy fit(List<MeshData> parts) {
+    int faceCount = 0;
+    for (MeshData part : parts) {
+      faceCount += part.faces.size();
+      if (part.collisionIntention != parts.getFirst().collisionIntention)
+        return null;
+    }
+    if (faceCount == 0 || faceCount > MAX_FACES)
+      return null;
+    Surface surface = new Surface(parts, faceCount);
+    double[][] principalAxes = surface.getPrincipalAxes();
+    BoxShape principalBox = BoxShape.fit(surface, principalAxes);
+    BoxShape box = principalBox;
+    for (double[][] axes : surface.getTriangleFrames()) {
+      BoxShape candidate = BoxShape.fit(surface, axes);
+      if (candidate.getSurfaceArea() < box.getSurfaceArea())
+        box = candidate;
+    }
+    if (matches(box, surface))
+      return box.toProxy();
+    CapsuleShape capsule = CapsuleShape.fit(surface, principalBox.center, principalAxes);
+    if (matches(capsule, surface))
+      return capsule.toProxy();
+    HullShape hull = HullShape.fit(surface);
+    if (hull != null && matches(hull, surface))
+      return hull.toProxy();
+    return null;
+  }
+
+  private boolean matches(Shape shape, Surface surface) {
+    for (int i = 0; i < surface.points.length; i += 3) {
+      if (Math.abs(shape.signedDistance(surface.points[i], surface.points[i + 1], surface.points[i + 2])) > maxError)
+        return false;
+    }
+    List<double[]> samples = new ArrayList<>();
+    shape.sample(samples);
+    for (double[] sample : samples) {
+      if (!surface.isWithin(sample, maxError))
+        return false;
+    }
+    return true;
+  }
+
+  private static double dot(double[] a, double x, double y, double z) {
+    return a[0] * x + a[1] * y + a[2] * z;
+  }
+
+  /**
+   * @return (b - a) x (c - a) for the points at the given offsets
+   */
+  private static double[] cross(double[] xyz, int a, int b, int c) {
+    double abx = xyz[b] - xyz[a], aby = xyz[b + 1] - xyz[a + 1], abz = xyz[b + 2] - xyz[a + 2];
+    double acx = xyz[c] - xyz[a], acy = xyz[c + 1] - xyz[a + 1], acz = xyz[c + 2] - xyz[a + 2];
+    return new double[] { aby * acz - abz * acy, abz * acx - abx * acz, abx * acy - aby * acx };
+  }
+
+  private static double[] normalize(double[] v) {
+    double length = Math.sqrt(dot(v, v[0], v[1], v[2]));
+    return new double[] { v[0] / length, v[1] / length, v[2] / length };
+  }
+
+  /**
+   * Triangles and distinct vertices of all parts
+   */
+  private static class Surface {
+
+    private final double[] triangles; // 9 coordinates per triangle
+    private final double[] points;
+
+    private Surface(List<MeshData> parts, int faceCount) {
+      triangles = new double[faceCount * 9];
+      Set<Vector3> distinctVertices = new LinkedHashSet<>();
+      int t = 0;
+      for (MeshData part : parts) {
+        distinctVertices.addAll(part.vertices);
+        for (MeshFace face : part.faces) {
+          for (int v : new int[] { face.v0, face.v1, face.v2 }) {
+            Vector3 vertex = part.vertices.get(v);
+            triangles[t++] = vertex.x;
+            triangles[t++] = vertex.y;
+            triangles[t++] = vertex.z;
+          }
+        }
+      }
+      points = new double[distinctVertices.size() * 3];
+      int i = 0;
+      for (Vector3 vertex : distinctVertices) {
+        points[i++] = vertex.x;
+        points[i++] = vertex.y;
+        points[i++] = vertex.z;
+      }
+    }
+
+    /**
+     * @return Unit axes in descending order of the vertex variance along them
+     */
+    private double[][] getPrincipalAxes() {
+      int n = points.length / 3;
+      double[] mean = new double[3];
+      for (int i = 0; i < points.length; i++)
+        mean[i % 3] += points[i] / n;
+      double[][] covariance = new double[3][3];
+      for (int i = 0; i < points.length; i += 3) {
+        for (int row = 0; row < 3; row++)
+          for (int col = 0; col < 3; col++)
+            covariance[row][col] += (points[i + row] - mean[row]) * (points[i + col] - mean[col]);
+      }
+      double[][] v = EigenDecomposition.diagonalize(covariance);
+      Integer[] order = { 0, 1, 2 };
+      Arrays.sort(order, (a, b) -> Double.compare(covariance[b][b], covariance[a][a]));
+      double[][] axes = new double[3][];
+      for (int i = 0; i < 3; i++)
+        axes[i] = new double[] { v[0][order[i]], v[1][order[i]], v[2][order[i]] };
+      // right-handed, so boxes and capsules don't depend on the sign the solver picked for the last axis
+      axes[2] = new double[] { axes[0][1] * axes[1][2] - axes[0][2] * axes[1][1], axes[0][2] * axes[1][0] - axes[0][0] * axes[1][2],
+          axes[0][0] * axes[1][1] - axes[0][1] * axes[1][0] };
+      return axes;
+    }
+
+    /**
+     * @return The mesh axes, followed by frames of the largest triangles (normal, one of its edges and their cross product)
+     */
+    private List<double[][]> getTriangleFrames() {
+      List<double[][]> frames = new ArrayList<>();
+      frames.add(new double[][] { { 1, 0, 0 }, { 0, 1, 0 }, { 0, 0, 1 } });
+      int[] triangleOrder = IndexSorter.identity(triangles.length / 9);
+      double[] areas = new double[triangleOrder.length];
+      double[][] normals = new double[triangleOrder.length][];
+      for (int t = 0; t < triangleOrder.length; t++) {
+        normals[t] = cross(triangles, t * 9, t * 9 + 3, t * 9 + 6);
+        areas[t] = Math.sqrt(dot(normals[t], normals[t][0], normals[t][1], normals[t][2]));
+      }
+      IndexSorter.sort(triangleOrder, (a, b) -> Double.compare(areas[b], areas[a]));
+      for (int i = 0; i < Math.min(MAX_TRIANGLE_FRAMES, triangleOrder.length) && areas[triangleOrder[i]] > 0; i++) {
+        int t = triangleOrder[i] * 9;
+        double[] n = normalize(normals[triangleOrder[i]]);
+        for (int e = 0; e < 3; e++) { // the longest edge is the diagonal of right triangles, so try all edges
+          int from = t + e * 3, to = t + (e + 1) % 3 * 3;
+          double[] u = normalize(new double[] { triangles[to] - triangles[from], triangles[to + 1] - triangles[from + 1], triangles[to + 2] - triangles[from + 2] });
+          frames.add(new double[][] { n, u, normalize(new double[] { n[1] * u[2] - n[2] * u[1], n[2] * u[0] - n[0] * u[2], n[0] * u[1] - n[1] * u[0] }) });
+        }
+      }
+      return frames;
+    }
+
+    private boolean isWithin(double[] p, double distance) {
+      double distanceSq = distance * distance;
+      for (int t = 0; t < triangles.length; t += 9) {
+        if (distanceSqToTriangle(p, t) <= distanceSq)
+          return true;
+      }
+      return false;
+    }
+
+    /**
+     * Closest point on triangle via its Voronoi regions (Ericson, Real-Time Collision Detection, 5.1.5)
+     */
+    private double distanceSqToTriangle(double[] p, int t) {
+      double[] tri = triangles;
+      double abx = tri[t + 3] - tri[t], aby = tri[t + 4] - tri[t + 1], abz = tri[t + 5] - tri[t + 2];
+      double acx = tri[t + 6] - tri[t], acy = tri[t + 7] - tri[t + 1], acz = tri[t + 8] - tri[t + 2];
+      double apx = p[0] - tri[t], apy = p[1] - tri[t + 1], apz = p[2] - tri[t + 2];
+      double d1 = abx * apx + aby * apy + abz * apz, d2 = acx * apx + acy * apy + acz * apz;
+      if (d1 <= 0 && d2 <= 0)
+        return apx * apx + apy * apy + apz * apz;
+      double bpx = p[0] - tri[t + 3], bpy = p[1] - tri[t + 4], bpz = p[2] - tri[t + 5];
+      double d3 = abx * bpx + aby * bpy + abz * bpz, d4 = acx * bpx + acy * bpy + acz * bpz;
+      if (d3 >= 0 && d4 <= d3)
+        return bpx * bpx + bpy * bpy + bpz * bpz;
+      double s, v;
+      double vc = d1 * d4 - d3 * d2;
+      double cpx = p[0] - tri[t + 6], cpy = p[1] - tri[t + 7], cpz = p[2] - tri[t + 8];
+      double d5 = abx * cpx + aby * cpy + abz * cpz, d6 = acx * cpx + acy * cpy + acz * cpz;
+      double vb = d5 * d2 - d1 * d6, va = d3 * d6 - d5 * d4;
+      if (vc <= 0 && d1 >= 0 && d3 <= 0) { // edge ab
+        s = d1 / (d1 - d3);
+        v = 0;
+      } else if (d6 >= 0 && d5 <= d6) { // vertex c
+        return cpx * cpx + cpy * cpy + cpz * cpz;
+      } else if (vb <= 0 && d2 >= 0 && d6 <= 0) { // edge ac
+        s = 0;
+        v = d2 / (d2 - d6);
+      } else if (va <= 0 && d4 - d3 >= 0 && d5 - d6 >= 0) { // edge bc
+        double w = (d4 - d3) / ((d4 - d3) + (d5 - d6));
+        s = 1 - w;
+        v = w;
+      } else { // face
+        double denominator = va + vb + vc;
+        if (denominator == 0) // degenerate triangle, its edges are covered by the other cases
+          return Double.MAX_VALUE;
+        s = vb / denominator;
+        v = vc / denominator;
+      }
+      double dx = apx - abx * s - acx * v, dy = apy - aby * s - acy * v, dz = apz - abz * s - acz * v;
+      return dx * dx + dy * dy + dz * dz;
+    }
+  }
+
+  private interface Shape {
+
+    /**
+     * @return The distance to the surface, negative inside the shape
+     */
+    double signedDistance(double x, double y, double z);
+
+    void sample(List<double[]> samples);
+
+    CollisionProxy toProxy();
+  }
+
+  private static class BoxShape implements Shape {
+
+    private final double[] center;
+    private final double[][] axes;
+    private final double[] halfExtents;
+
+    private BoxShape(double[] center, double[][] axes, double[] halfExtents) {
+      this.center = center;
+      this.axes = axes;
+      this.halfExtents = halfExtents;
+    }
+
+    private static BoxShape fit(Surface surface, double[][] axes) {
+      double[] min = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+      double[] max = { -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+      for (int i = 0; i < surface.points.length; i += 3) {
+        for (int axis = 0; axis < 3; axis++) {
+          double d = dot(axes[axis], surface.points[i], surface.points[i + 1], surface.points[i + 2]);
+          min[axis] = Math.min(min[axis], d);
+          max[axis] = Math.max(max[axis], d);
+        }
+      }
+      double[] center = new double[3], halfExtents = new double[3];
+      for (int axis = 0; axis < 3; axis++) {
+        double mid = (min[axis] + max[axis]) / 2;
+        halfExtents[axis] = (max[axis] - min[axis]) / 2;
+        for (int i = 0; i < 3; i++)
+          center[i] += axes[axis][i] * mid;
+      }
+      return new BoxShape(center, axes, halfExtents);
+    }
+
+    private double getSurfaceArea() { // without the constant factor, also works for flat boxes
+      return halfExtents[0] * halfExtents[1] + halfExtents[1] * halfExtents[2] + halfExtents[2] * halfExtents[0];
+    }
+
+    @Override
+    public double signedDistance(double x, double y, double z) {
+      double outsideSq = 0, inside = -Double.MAX_VALUE;
+      for (int axis = 0; axis < 3; axis++) {
+        double q = Math.abs(dot(axes[axis], x - center[0], y - center[1], z - center[2])) - halfExtents[axis];
+        if (q > 0)
+          outsideSq += q * q;
+        inside = Math.max(inside, q);
+      }
+      return outsideSq > 0 ? Math.sqrt(outsideSq) : inside;
+    }
+
+    @Override
+    public void sample(List<double[]> samples) {
+      for (int axis = 0; axis < 3; axis++) {
+        int u = (axis + 1) % 3, v = (axis + 2) % 3;
+        for (int sign = -1; sign <= 1; sign += 2) {
+          for (int i = 0; i < GRID_SAMPLES; i++) {
+            for (int j = 0; j < GRID_SAMPLES; j++) {
+              double du = halfExtents[u] * (2.0 * i / (GRID_SAMPLES - 1) - 1), dv = halfExtents[v] * (2.0 * j / (GRID_SAMPLES - 1) - 1);
+              double[] p = new double[3];
+              for (int k = 0; k < 3; k++)
+                p[k] = center[k] + axes[axis][k] * sign * halfExtents[axis] + axes[u][k] * du + axes[v][k] * dv;
+              samples.add(p);
+            }
+          }
+        }
+      }
+    }
+
+    @Override
+    public CollisionProxy toProxy() {
+      Vector3[] proxyAxes = new Vector3[3];
+      for (int axis = 0; axis < 3; axis++)
+        proxyAxes[axis] = new Vector3((float) axes[axis][0], (float) axes[axis][1], (float) axes[axis][2]);
+      return new CollisionProxy.Box(toVector(center), proxyAxes, toVector(halfExtents));
+    }
+  }
+
+  private static class CapsuleShape implements Shape {
+
+    private final double[] start, end;
+    private final double[][] axes;
+    private final double radius;
+
+    private CapsuleShape(double[] start, double[] end, double[][] axes, double radius) {
+      this.start = start;
+      this.end = end;
+      this.axes = axes;
+      this.radius = radius;
+    }
+
+    /**
+     * Fits a capsule along the first axis through the given center
+     */
+    private static CapsuleShape fit(Surface surface, double[] center, double[][] axes) {
+      double[] axis = axes[0];
+      double min = Double.MAX_VALUE, max = -Double.MAX_VALUE, radiusSq = 0;
+      for (int i = 0; i < surface.points.length; i += 3) {
+        double x = surface.points[i] - center[0], y = surface.points[i + 1] - center[1], z = surface.points[i + 2] - center[2];
+        double t = dot(axis, x, y, z);
+        min = Math.min(min, t);
+        max = Math.max(max, t);
+        radiusSq = Math.max(radiusSq, x * x + y * y + z * z - t * t);
+      }
+      double radius = Math.sqrt(radiusSq);
+      double startT = Math.min(min + radius, (min + max) / 2), endT = Math.max(max - radius, (min + max) / 2);
+      double[] start = new double[3], end = new double[3];
+      for (int i = 0; i < 3; i++) {
+        start[i] = center[i] + axis[i] * startT;
+        end[i] = center[i] + axis[i] * endT;
+      }
+      return new CapsuleShape(start, end, axes, radius);
+    }
+
+    @Override
+    public double signedDistance(double x, double y, double z) {
+      double abx = end[0] - start[0], aby = end[1] - start[1], abz = end[2] - start[2];
+      double apx = x - start[0], apy = y - start[1], apz = z - start[2];
+      double lengthSq = abx * abx + aby * aby + abz * abz;
+      double t = lengthSq == 0 ? 0 : Math.clamp((apx * abx + apy * aby + apz * abz) / lengthSq, 0, 1);
+      double dx = apx - abx * t, dy = apy - aby * t, dz = apz - abz * t;
+      return Math.sqrt(dx * dx + dy * dy + dz * dz) - radius;
+    }
+
+    @Override
+    public void sample(List<double[]> samples) {
+      // rings along the cylinder, then two rings and the pole of each cap
+      for (int ring = 0; ring < GRID_SAMPLES; ring++) {
+        double t = (double) ring / (GRID_SAMPLES - 1);
+        addRing(samples, t, 0, radius);
+      }
+      for (double angle : new double[] { Math.PI / 6, Math.PI / 3 }) {
+        addRing(samples, 0, -radius * Math.sin(angle), radius * Math.cos(angle));
+        addRing(samples, 1, radius * Math.sin(angle), radius * Math.cos(angle));
+      }
+      addRing(samples, 0, -radius, 0);
+      addRing(samples, 1, radius, 0);
+    }
+
+    /**
+     * @param t Position between start and end
+     * @param offset Distance along the axis from that position
+     */
+    private void addRing(List<double[]> samples, double t, double offset, double ringRadius) {
+      for (int i = 0; i < (ringRadius == 0 ? 1 : RING_SAMPLES); i++) {
+        double angle = 2 * Math.PI * i / RING_SAMPLES;
+        double cos = Math.cos(angle) * ringRadius, sin = Math.sin(angle) * ringRadius;
+        double[] p = new double[3];
+        for (int k = 0; k < 3; k++)
+          p[k] = start[k] + (end[k] - start[k]) * t + axes[0][k] * offset + axes[1][k] * cos + axes[2][k] * sin;
+        samples.add(p);
+      }
+    }
+
+    @Override
+    public CollisionProxy toProxy() {
+      return new CollisionProxy.Capsule(toVector(start), toVector(end), Math.nextUp((float) radius));
+    }
+  }
+
+  /**
+   * Convex hull, built incrementally: Each point outside the current hull removes the faces it can see and connects the horizon edges to itself.
+   */
+  private static class HullShape implements Shape {
+
+    private final double[] points;
+    private final List<int[]> faces;
+    private final List<double[]> planes; // normal and offset per face
+
+    private HullShape(double[] points, List<int[]> faces) {
+      this.points = points;
+      this.faces = faces;
+      planes = new ArrayList<>(faces.size());
+      for (int[] face : faces)
+        planes.add(plane(points, face));
+    }
+
+    private static HullShape fit(Surface surface) {
+      double[] p = surface.points;
+      int n = p.length / 3;
+      if (n < 4)
+        return null;
+      double scale = 0;
+      for (int i = 0; i < p.length; i++)
+        scale = Math.max(scale, Math.abs(p[i]));
+      double epsilon = 1e-6 * Math.max(1, scale);
+      // initial tetrahedron from extreme points
+      int minX = 0;
+      for (int i = 1; i < n; i++) {
+        if (p[i * 3] < p[minX * 3])
+          minX = i;
+      }
+      int a = minX;
+      int b = farthest(i -> distanceSq(p, a, i), n);
+      int c = farthest(i -> lineDistanceSq(p, a, b, i), n);
+      if (lineDistanceSq(p, a, b, c) <= epsilon * epsilon)
+        return null;
+      double[] basePlane = plane(p, new int[] { a, b, c });
+      int d = farthest(i -> Math.abs(planeDistance(basePlane, p, i)), n);
+      if (Math.abs(planeDistance(basePlane, p, d)) <= epsilon)
+        return null; // flat
+      List<int[]> faces = new ArrayList<>();
+      if (planeDistance(basePlane, p, d) > 0) { // orient the base away from d
+        faces.addAll(List.of(new int[] { a, c, b }, new int[] { a, b, d }, new int[] { b, c, d }, new int[] { c, a, d }));
+      } else {
+        faces.addAll(List.of(new int[] { a, b, c }, new int[] { b, a, d }, new int[] { c, b, d }, new int[] { a, c, d }));
+      }
+      List<double[]> planes = new ArrayList<>();
+      for (int[] face : faces)
+        planes.add(plane(p, face));
+      for (int i = 0; i < n; i++) {
+        LongHashSet visibleEdges = new LongHashSet(16);
+        List<int[]> visibleFaces = new ArrayList<>();
+        List<int[]> keptFaces = new ArrayList<>(faces.size() + 8);
+        List<double[]> keptPlanes = new ArrayList<>(faces.size() + 8);
+        for (int f = 0; f < faces.size(); f++) {
+          if (planeDistance(planes.get(f), p, i) > epsilon) {
+            int[] face = faces.get(f);
+            visibleFaces.add(face);
+            for (int e = 0; e < 3; e++)
+              visibleEdges.add(edgeKey(face[e], face[(e + 1) % 3]));
+          } else {
+            keptFaces.add(faces.get(f));
+            keptPlanes.add(planes.get(f));
+          }
+        }
+        if (visibleFaces.isEmpty())
+          continue;
+        for (int[] face : visibleFaces) {
+          for (int e = 0; e < 3; e++) {
+            int from = face[e], to = face[(e + 1) % 3];
+            if (!visibleEdges.contains(edgeKey(to, from))) { // horizon edge
+              int[] newFace = { from, to, i };
+              keptFaces.add(newFace);
+              keptPlanes.add(plane(p, newFace));
+            }
+          }
+        }
+        faces = keptFaces;
+        planes = keptPlanes;
+      }
+      return compact(p, faces);
+    }
+
+    /**
+     * @return The hull with only its own vertices, or null if it's not closed or has too many vertices
+     */
+    private static HullShape compact(double[] p, List<int[]> faces) {
+      LongHashSet edges = new LongHashSet(faces.size() * 3);
+      for (int[] face : faces)
+        for (int e = 0; e < 3; e++)
+          edges.add(edgeKey(face[e], face[(e + 1) % 3]));
+      Map<Integer, Integer> newIndices = new LinkedHashMap<>();
+      for (int[] face : faces) {
+        for (int e = 0; e < 3; e++) {
+          if (!edges.contains(edgeKey(face[(e + 1) % 3], face[e])))
+            return null;
+          newIndices.putIfAbsent(face[e], newIndices.size());
+        }
+      }
+      if (newIndices.size() > MAX_HULL_VERTICES)
+        return null;
+      double[] points = new double[newIndices.size() * 3];
+      newIndices.forEach((oldIndex, newIndex) -> System.arraycopy(p, oldIndex * 3, points, newIndex * 3, 3));
+      List<int[]> newFaces = new ArrayList<>(faces.size());
+      for (int[] face : faces)
+        newFaces.add(new int[] { newIndices.get(face[0]), newIndices.get(face[1]), newIndices.get(face[2]) });
+      return new HullShape(points, newFaces);
+    }
+
+    private static int farthest(IntToDoubleFunction distance, int n) {
+      int farthest = 0;
+      double max = -1;
+      for (int i = 0; i < n; i++) {
+        double d = distance.applyAsDouble(i);
+        if (d > max) {
+          max = d;
+          farthest = i;
+        }
+      }
+      return farthest;
+    }
+
+    private static double distanceSq(double[] p, int a, int b) {
+      double dx = p[b * 3] - p[a * 3], dy = p[b * 3 + 1] - p[a * 3 + 1], dz = p[b * 3 + 2] - p[a * 3 + 2];
+      return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static double lineDistanceSq(double[] p, int a, int b, int i) {
+      double abx = p[b * 3] - p[a * 3], aby = p[b * 3 + 1] - p[a * 3 + 1], abz = p[b * 3 + 2] - p[a * 3 + 2];
+      double apx = p[i * 3] - p[a * 3], apy = p[i * 3 + 1] - p[a * 3 + 1], apz = p[i * 3 + 2] - p[a * 3 + 2];
+      double cx = aby * apz - abz * apy, cy = abz * apx - abx * apz, cz = abx * apy - aby * apx;
+      double lengthSq = abx * abx + aby * aby + abz * abz;
+      return lengthSq == 0 ? 0 : (cx * cx + cy * cy + cz * cz) / lengthSq;
+    }
+
+    private static double[] plane(double[] p, int[] face) {
+      int a = face[0] * 3;
+      double[] normal = cross(p, a, face[1] * 3, face[2] * 3);
+      double nx = normal[0], ny = normal[1], nz = normal[2];
+      double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+      if (length == 0)
+        return new double[] { 0, 0, 0, 0 };
+      nx /= length;
+      ny /= length;
+      nz /= length;
+      return new double[] { nx, ny, nz, nx * p[a] + ny * p[a + 1] + nz * p[a + 2] };
+    }
+
+    private static double planeDistance(double[] plane, double[] p, int i) {
+      return plane[0] * p[i * 3] + plane[1] * p[i * 3 + 1] + plane[2] * p[i * 3 + 2] - plane[3];
+    }
+
+    private static long edgeKey(int from, int to) {
+      return (long) from << 32 | to & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public double signedDistance(double x, double y, double z) {
+      double max = -Double.MAX_VALUE;
+      for (double[] plane : planes)
+        max = Math.max(max, plane[0] * x + plane[1] * y + plane[2] * z - plane[3]);
+      return max;
+    }
+
+    @Override
+    public void sample(List<double[]> samples) {
+      for (int[] face : faces) {
+        double[] centroid = new double[3];
+        for (int e = 0; e < 3; e++) {
+          int from = face[e] * 3, to = face[(e + 1) % 3] * 3;
+          double[] midpoint = new double[3];
+          for (int k = 0; k < 3; k++) {
+            midpoint[k] = (points[from + k] + points[to + k]) / 2;
+            centroid[k] += points[from + k] / 3;
+          }
+          samples.add(midpoint);
+        }
+        samples.add(centroid);
+      }
+    }
+
+    @Override
+    public CollisionProxy toProxy() {
+      Vector3[] vertices = new Vector3[points.length / 3];
+      for (int i = 0; i < vertices.length; i++)
+        vertices[i] = new Vector3((float) points[i * 3], (float) points[i * 3 + 1], (float) points[i * 3 + 2]);
+      MeshFace[] hullFaces = new MeshFace[faces.size()];
+      for (int i = 0; i < hullFaces.length; i++) {
+        hullFaces[i] = new MeshFace();
+        hullFaces[i].v0 = faces.get(i)[0];
+        hullFaces[i].v1 = faces.get(i)[1];
+        hullFaces[i].v2 = faces.get(i)[2];
+      }
+      return new CollisionProxy.ConvexHull(vertices, hullFaces);
+    }
+  }
+
+  private static Vector3 toVector(double[] xyz) {
+    return new Vector3((float) xyz[0], (float) xyz[1], (float) xyz[2]);
+  }
+}
@@ -0,0 +1,52 @@
+package com.aionemu.geobuilder.meshData;
+
+import com.aionemu.geobuilder.utils.Vector3;
+
+import java.util.List;
+
+/**
+ * Axis aligned bounding box and bounding sphere of one or multiple mesh parts. The sphere is centered in the box, its radius is rounded up, so it
+ * contains all vertices despite float rounding.
+ */
+public class MeshBounds {
+
+  public final Vector3 min, max, center;
+  public final float radius;
+
+  private MeshBounds(Vector3 min, Vector3 max, Vector3 center, float radius) {
+    this.min = min;
+    this.max = max;
+    this.center = center;
+    this.radius = radius;
+  }
+
+  public static MeshBounds of(MeshData part) {
+    return of(List.of(part));
+  }
+
+  public static MeshBounds of(List<MeshData> parts) {
+    Vector3 min = new Vector3(Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE);
+    Vector3 max = new Vector3(-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE);
+    for (MeshData part : parts) {
+      for (Vector3 v : part.vertices) {
+        min.x = Math.min(min.x, v.x);
+        min.y = Math.min(min.y, v.y);
+        min.z = Math.min(min.z, v.z);
+        max.x = Math.max(max.x, v.x);
+        max.y = Math.max(max.y, v.y);
+        max.z = Math.max(max.z, v.z);
+      }
+    }
+    if (min.x > max.x) // no vertices
+      return new MeshBounds(new Vector3(), new Vector3(), new Vector3(), 0);
+    Vector3 center = new Vector3((min.x + max.x) / 2, (min.y + max.y) / 2, (min.z + max.z) / 2);
+    double maxDistanceSq = 0;
+    for (MeshData part : parts) {
+      for (Vector3 v : part.vertices) {
+        double dx = v.x - center.x, dy = v.y - center.y, dz = v.z - center.z;
+        maxDistanceSq = Math.max(maxDistanceSq, dx * dx + dy * dy + dz * dz);
+      }
+    }
+    return new MeshBounds(min, max, center, Math.nextUp((float) Math.sqrt(maxDistanceSq)));
+  }
+}
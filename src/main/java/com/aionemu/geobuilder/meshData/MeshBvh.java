@@ -0,0 +1,225 @@
+package com.aionemu.geobuilder.meshData;
+
+import com.aionemu.geobuilder.utils.Vector3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bounding volume hierarchy over the faces of a mesh, flattened into a depth-first node array. The second child of an inner node is referenced by its
+ * index, the first child directly follows its parent. Leaves reference a range of faces, so faces must be stored in {@link #getOrderedFaces()} order.
+ * Splits are chosen via a binned surface area heuristic along the axis with the largest centroid extent.
+ */
+public class MeshBvh {
+
+  public static final int MAX_LEAF_FACES = 4;
+  private static final int BINS = 16;
+  private static final float TRAVERSAL_COST = 1;
+  /**
+   * Unbalanced SAH splits are replaced by splits in the middle below this depth, which limits the recursion depth
+   */
+  private static final int MAX_SAH_DEPTH = 48;
+
+  private final List<MeshFace> faces;
+  private final float[] faceBounds; // min xyz, max xyz per face
+  private final float[] centroids;
+  private final int[] faceOrder;
+  private float[] nodeBounds = new float[6 * 16];
+  private int[] nodeReferences = new int[16]; // second child index or first face index
+  private int[] nodeFaceCounts = new int[16]; // 0 for inner nodes
+  private int nodeCount;
+
+  /**
+   * @param vertices The vertices as decoded by readers, so node bounds contain the faces they load, even if vertices were quantized
+   */
+  public MeshBvh(List<MeshFace> faces, List<Vector3> vertices) {
+    this.faces = faces;
+    int faceCount = faces.size();
+    faceBounds = new float[faceCount * 6];
+    centroids = new float[faceCount * 3];
+    faceOrder = new int[faceCount];
+    for (int f = 0; f < faceCount; f++) {
+      MeshFace face = faces.get(f);
+      Vector3 a = vertices.get(face.v0), b = vertices.get(face.v1), c = vertices.get(face.v2);
+      faceBounds[f * 6] = Math.min(a.x, Math.min(b.x, c.x));
+      faceBounds[f * 6 + 1] = Math.min(a.y, Math.min(b.y, c.y));
+      faceBounds[f * 6 + 2] = Math.min(a.z, Math.min(b.z, c.z));
+      faceBounds[f * 6 + 3] = Math.max(a.x, Math.max(b.x, c.x));
+      faceBounds[f * 6 + 4] = Math.max(a.y, Math.max(b.y, c.y));
+      faceBounds[f * 6 + 5] = Math.max(a.z, Math.max(b.z, c.z));
+      for (int axis = 0; axis < 3; axis++)
+        centroids[f * 3 + axis] = (faceBounds[f * 6 + axis] + faceBounds[f * 6 + 3 + axis]) / 2;
+      faceOrder[f] = f;
+    }
+    if (faceCount > 0)
+      build(0, faceCount, 0);
+  }
+
+  public int getNodeCount() {
+    return nodeCount;
+  }
+
+  /**
+   * @return Min and max corner (x, y, z each) of the node's bounding box
+   */
+  public float[] getNodeBounds(int node) {
+    return Arrays.copyOfRange(nodeBounds, node * 6, node * 6 + 6);
+  }
+
+  /**
+   * @return The index of the second child for inner nodes, or the index of the first face in {@link #getOrderedFaces()} for leaves
+   */
+  public int getNodeReference(int node) {
+    return nodeReferences[node];
+  }
+
+  /**
+   * @return The number of faces of a leaf, or 0 for inner nodes
+   */
+  public int getNodeFaceCount(int node) {
+    return nodeFaceCounts[node];
+  }
+
+  public List<MeshFace> getOrderedFaces() {
+    List<MeshFace> orderedFaces = new ArrayList<>(faceOrder.length);
+    for (int f : faceOrder)
+      orderedFaces.add(faces.get(f));
+    return orderedFaces;
+  }
+
+  private int build(int start, int end, int depth) {
+    int node = addNode();
+    float[] bounds = new float[6];
+    computeBounds(start, end, bounds);
+    System.arraycopy(bounds, 0, nodeBounds, node * 6, 6);
+    int count = end - start;
+    int mid;
+    if (count <= 1)
+      mid = -1;
+    else if (depth >= MAX_SAH_DEPTH)
+      mid = count > MAX_LEAF_FACES ? (start + end) >>> 1 : -1;
+    else
+      mid = findSplit(start, end, bounds, count > MAX_LEAF_FACES);
+    if (mid == -1) {
+      nodeReferences[node] = start;
+      nodeFaceCounts[node] = count;
+    } else {
+      build(start, mid, depth + 1);
+      int secondChild = build(mid, end, depth + 1); // assigned separately, since building may replace the node arrays
+      nodeReferences[node] = secondChild;
+    }
+    return node;
+  }
+
+  /**
+   * @return The index where the face range is split, or -1 if a leaf is cheaper
+   */
+  private int findSplit(int start, int end, float[] bounds, boolean forceSplit) {
+    float[] centroidBounds = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
+    for (int i = start; i < end; i++) {
+      for (int axis = 0; axis < 3; axis++) {
+        float c = centroids[faceOrder[i] * 3 + axis];
+        centroidBounds[axis] = Math.min(centroidBounds[axis], c);
+        centroidBounds[3 + axis] = Math.max(centroidBounds[3 + axis], c);
+      }
+    }
+    int axis = 0;
+    for (int a = 1; a < 3; a++) {
+      if (centroidBounds[3 + a] - centroidBounds[a] > centroidBounds[3 + axis] - centroidBounds[axis])
+        axis = a;
+    }
+    float extent = centroidBounds[3 + axis] - centroidBounds[axis];
+    if (extent <= 0)
+      return forceSplit ? (start + end) >>> 1 : -1; // all centroids are equal, so there is no better split than by count
+    int[] binCounts = new int[BINS];
+    float[] binBounds = new float[BINS * 6];
+    for (int b = 0; b < BINS; b++)
+      resetBounds(binBounds, b);
+    for (int i = start; i < end; i++) {
+      int f = faceOrder[i];
+      int bin = getBin(centroids[f * 3 + axis], centroidBounds[axis], extent);
+      binCounts[bin]++;
+      includeBounds(binBounds, bin, faceBounds, f);
+    }
+    // sweep from the right to get the area of all right sides, then from the left to evaluate each split plane
+    float[] rightAreas = new float[BINS];
+    float[] sweep = new float[6];
+    resetBounds(sweep, 0);
+    for (int b = BINS - 1; b > 0; b--) {
+      includeBounds(sweep, 0, binBounds, b);
+      rightAreas[b] = getArea(sweep);
+    }
+    resetBounds(sweep, 0);
+    float bestCost = Float.MAX_VALUE;
+    int bestBin = -1, leftCount = 0;
+    for (int b = 0; b < BINS - 1; b++) {
+      includeBounds(sweep, 0, binBounds, b);
+      leftCount += binCounts[b];
+      int rightCount = end - start - leftCount;
+      if (leftCount == 0 || rightCount == 0)
+        continue;
+      float cost = getArea(sweep) * leftCount + rightAreas[b + 1] * rightCount;
+      if (cost < bestCost) {
+        bestCost = cost;
+        bestBin = b;
+      }
+    }
+    float area = getArea(bounds);
+    if (!forceSplit && (bestBin == -1 || area <= 0 || TRAVERSAL_COST + bestCost / area >= end - start))
+      return -1;
+    if (bestBin == -1)
+      return (start + end) >>> 1;
+    // partition faces left of the split plane to the front
+    int mid = start;
+    for (int i = start; i < end; i++) {
+      int f = faceOrder[i];
+      if (getBin(centroids[f * 3 + axis], centroidBounds[axis], extent) <= bestBin) {
+        faceOrder[i] = faceOrder[mid];
+        faceOrder[mid++] = f;
+      }
+    }
+    return mid;
+  }
+
+  private static int getBin(float centroid, float min, float extent) {
+    return Math.min(BINS - 1, (int) ((centroid - min) / extent * BINS));
+  }
+
+  private void computeBounds(int start, int end, float[] bounds) {
+    resetBounds(bounds, 0);
+    for (int i = start; i < end; i++)
+      includeBounds(bounds, 0, faceBounds, faceOrder[i]);
+  }
+
+  private static void resetBounds(float[] bounds, int index) {
+    Arrays.fill(bounds, index * 6, index * 6 + 3, Float.MAX_VALUE);
+    Arrays.fill(bounds, index * 6 + 3, index * 6 + 6, -Float.MAX_VALUE);
+  }
+
+  private static void includeBounds(float[] bounds, int index, float[] other, int otherIndex) {
+    for (int axis = 0; axis < 3; axis++) {
+      bounds[index * 6 + axis] = Math.min(bounds[index * 6 + axis], other[otherIndex * 6 + axis]);
+      bounds[index * 6 + 3 + axis] = Math.max(bounds[index * 6 + 3 + axis], other[otherIndex * 6 + 3 + axis]);
+    }
+  }
+
+  /**
+   * @return Half the surface area of the box, or 0 if it is empty
+   */
+  private static float getArea(float[] bounds) {
+    float dx = bounds[3] - bounds[0], dy = bounds[4] - bounds[1], dz = bounds[5] - bounds[2];
+    if (dx < 0 || dy < 0 || dz < 0)
+      return 0;
+    return dx * dy + dy * dz + dz * dx;
+  }
+
+  private int addNode() {
+    if (nodeCount == nodeReferences.length) {
+      nodeBounds = Arrays.copyOf(nodeBounds, nodeBounds.length * 2);
+      nodeReferences = Arrays.copyOf(nodeReferences, nodeReferences.length * 2);
+      nodeFaceCounts = Arrays.copyOf(nodeFaceCounts, nodeFaceCounts.length * 2);
+    }
+    return nodeCount++;
+  }
+}
@@ -1,7 +1,12 @@
 package com.aionemu.geobuilder.meshData;
 
+import com.aionemu.geobuilder.utils.IndexSorter;
+import com.aionemu.geobuilder.utils.LongHashSet;
+import com.aionemu.geobuilder.utils.OffHeapArena;
 import com.aionemu.geobuilder.utils.Vector3;
 
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.util.*;
 
 public class MeshData {
@@ -9,6 +14,9 @@ public class MeshData {
   public List<Vector3> vertices = Collections.emptyList();
   public List<MeshFace> faces = Collections.emptyList();
   private int maxFaceVertexIndex = -1;
+  private long fingerprint;
+  private boolean hasFingerprint;
+  private MeshBounds bounds;
 
   public int materialId = 0;
   public int collisionIntention = CollisionIntention.PHYSICAL.getId();
@@ -21,41 +29,171 @@ public class MeshData {
     return maxFaceVertexIndex;
   }
 
+  /**
+   * @return The bounds of this part, which are updated when the mesh is compacted or sorted
+   */
+  public MeshBounds getBounds() {
+    if (bounds == null)
+      bounds = MeshBounds.of(this);
+    return bounds;
+  }
+
   public int getSize() {
     return vertices.size() * 3 * 4 + faces.size() * 3 * (getMaxFaceVertexIndex() > 0xFF ? 2 : 1) + 4 + 4;
   }
 
-  public void compact() {
-    int[] uniqueIndices = new int[vertices.size()];
-    Map<Vector3, Integer> unique = new HashMap<>();
+  /**
+   * Merges each vertex into the nearest preceding unmerged vertex within the given distance, using a spatial hash grid. Merged vertices keep the
+   * position of the vertex they were merged into, so no vertex moves by more than the tolerance. Faces which become degenerate are removed, which
+   * includes faces that are thinner than the tolerance. Vertices which are no longer referenced are only removed by {@link #compact()}.
+   */
+  public void weld(float tolerance) {
+    if (!(tolerance > 0))
+      throw new IllegalArgumentException("Weld tolerance must be positive: " + tolerance);
+    moveOnHeap();
+    double[] xyz = new double[vertices.size() * 3];
     for (int i = 0; i < vertices.size(); i++) {
-      int index = i;
-      uniqueIndices[i] = unique.computeIfAbsent(vertices.get(i), k -> index);
+      Vector3 vertex = vertices.get(i);
+      xyz[i * 3] = vertex.x;
+      xyz[i * 3 + 1] = vertex.y;
+      xyz[i * 3 + 2] = vertex.z;
+    }
+    VertexGrid grid = new VertexGrid(xyz, tolerance);
+    int[] representatives = new int[vertices.size()];
+    for (int i = 0; i < representatives.length; i++) {
+      int vertexIndex = i;
+      int representative = grid.findNearest(xyz[i * 3], xyz[i * 3 + 1], xyz[i * 3 + 2], tolerance, j -> j < vertexIndex && representatives[j] == j);
+      representatives[i] = representative == -1 ? i : representative;
     }
-    Set<MeshFace> newFaces = new LinkedHashSet<>(faces.size()); // ordered set for repeatable file hashes
+    List<MeshFace> newFaces = new ArrayList<>(faces.size());
+    for (MeshFace face : faces) {
+      face.v0 = representatives[face.v0];
+      face.v1 = representatives[face.v1];
+      face.v2 = representatives[face.v2];
+      if (!face.isDegenerate() && !isThinnerThan(face, tolerance))
+        newFaces.add(face);
+    }
+    faces = newFaces;
+    maxFaceVertexIndex = -1;
+    hasFingerprint = false;
+    bounds = null;
+  }
+
+  /**
+   * @return True if the smallest height of the triangle (twice its area divided by the longest edge) is below the given distance
+   */
+  private boolean isThinnerThan(MeshFace face, float distance) {
+    Vector3 a = vertices.get(face.v0), b = vertices.get(face.v1), c = vertices.get(face.v2);
+    double abx = b.x - a.x, aby = b.y - a.y, abz = b.z - a.z;
+    double acx = c.x - a.x, acy = c.y - a.y, acz = c.z - a.z;
+    double bcx = c.x - b.x, bcy = c.y - b.y, bcz = c.z - b.z;
+    double crossX = aby * acz - abz * acy, crossY = abz * acx - abx * acz, crossZ = abx * acy - aby * acx;
+    double doubleAreaSq = crossX * crossX + crossY * crossY + crossZ * crossZ;
+    double longestEdgeSq = Math.max(abx * abx + aby * aby + abz * abz, Math.max(acx * acx + acy * acy + acz * acz, bcx * bcx + bcy * bcy + bcz * bcz));
+    return doubleAreaSq < (double) distance * distance * longestEdgeSq;
+  }
+
+  public void compact() {
+    moveOnHeap();
+    int[] uniqueIndices = findFirstOccurrences();
     for (MeshFace face : faces) {
       face.v0 = uniqueIndices[face.v0];
       face.v1 = uniqueIndices[face.v1];
       face.v2 = uniqueIndices[face.v2];
-      if (!face.isDegenerate()) {
+    }
+    // indices of huge parts (which get split later) don't fit in canonical keys
+    boolean[] firstFaceOccurrences = vertices.size() > MeshFace.MAX_PACKED_VERTEX_INDEX + 1 ? findFirstFaceOccurrences() : null;
+    LongHashSet uniqueFaceKeys = firstFaceOccurrences == null ? new LongHashSet(faces.size()) : null;
+    List<MeshFace> newFaces = new ArrayList<>(faces.size()); // keeps the first occurrence (including its winding) for repeatable file hashes
+    for (int i = 0; i < faces.size(); i++) {
+      MeshFace face = faces.get(i);
+      if (!face.isDegenerate() && (firstFaceOccurrences == null ? uniqueFaceKeys.add(face.getCanonicalKey()) : firstFaceOccurrences[i])) {
         newFaces.add(face);
       }
     }
-    BitSet oldIndices = new BitSet(vertices.size());
-    List<Vector3> newVertices = new ArrayList<>();
+    int[] newIndices = uniqueIndices; // no longer needed, reuse it to map old to new vertex indices
+    Arrays.fill(newIndices, -1);
+    List<Vector3> newVertices = new ArrayList<>(vertices.size());
     for (MeshFace face : newFaces) {
-      face.v0 = addUniqueVertexAndGetIndex(face.v0, oldIndices, uniqueIndices, newVertices);
-      face.v1 = addUniqueVertexAndGetIndex(face.v1, oldIndices, uniqueIndices, newVertices);
-      face.v2 = addUniqueVertexAndGetIndex(face.v2, oldIndices, uniqueIndices, newVertices);
+      face.v0 = addUniqueVertexAndGetIndex(face.v0, newIndices, newVertices);
+      face.v1 = addUniqueVertexAndGetIndex(face.v1, newIndices, newVertices);
+      face.v2 = addUniqueVertexAndGetIndex(face.v2, newIndices, newVertices);
     }
     vertices = newVertices;
-    faces = new ArrayList<>(newFaces);
+    faces = newFaces;
     maxFaceVertexIndex = vertices.size() - 1; // all vertices are referenced by faces now
+    hasFingerprint = false;
+    bounds = MeshBounds.of(this);
   }
 
-  private int addUniqueVertexAndGetIndex(int oldIndex, BitSet oldIndices, int[] newIndices, List<Vector3> newVertices) {
-    if (!oldIndices.get(oldIndex)) {
-      oldIndices.set(oldIndex);
+  /**
+   * Welds bit-identical vertices via an open addressing hash table on the raw float bits, which avoids boxing and per-vertex allocations.
+   *
+   * @return The index of the first equal vertex for each vertex index
+   */
+  private int[] findFirstOccurrences() {
+    int[] bits = new int[vertices.size() * 3];
+    for (int i = 0; i < vertices.size(); i++) {
+      Vector3 vertex = vertices.get(i);
+      bits[i * 3] = Float.floatToIntBits(vertex.x);
+      bits[i * 3 + 1] = Float.floatToIntBits(vertex.y);
+      bits[i * 3 + 2] = Float.floatToIntBits(vertex.z);
+    }
+    int[] firstOccurrences = new int[vertices.size()];
+    int[] table = new int[Integer.highestOneBit(Math.max(1, vertices.size() * 2 - 1)) << 1]; // vertex index + 1 (0 marks empty slots)
+    int mask = table.length - 1;
+    for (int i = 0; i < vertices.size(); i++) {
+      int x = bits[i * 3], y = bits[i * 3 + 1], z = bits[i * 3 + 2];
+      int slot = hash(x, y, z) & mask;
+      while (true) {
+        int entry = table[slot] - 1;
+        if (entry == -1) {
+          table[slot] = i + 1;
+          firstOccurrences[i] = i;
+          break;
+        }
+        if (bits[entry * 3] == x && bits[entry * 3 + 1] == y && bits[entry * 3 + 2] == z) {
+          firstOccurrences[i] = entry;
+          break;
+        }
+        slot = (slot + 1) & mask;
+      }
+    }
+    return firstOccurrences;
+  }
+
+  /**
+   * Finds duplicate faces by stably sorting them by their ascending vertex indices, so equal faces are adjacent in their original order.
+   *
+   * @return True for the first occurrence of each face, regardless of its index order
+   */
+  private boolean[] findFirstFaceOccurrences() {
+    int[] sortedIndices = new int[faces.size() * 3];
+    for (int i = 0; i < faces.size(); i++) {
+      MeshFace face = faces.get(i);
+      int min = Math.min(face.v0, Math.min(face.v1, face.v2));
+      int max = Math.max(face.v0, Math.max(face.v1, face.v2));
+      sortedIndices[i * 3] = min;
+      sortedIndices[i * 3 + 1] = face.v0 + face.v1 + face.v2 - min - max;
+      sortedIndices[i * 3 + 2] = max;
+    }
+    int[] order = IndexSorter.identity(faces.size());
+    IndexSorter.sort(order, (a, b) -> Arrays.compare(sortedIndices, a * 3, a * 3 + 3, sortedIndices, b * 3, b * 3 + 3));
+    boolean[] firstOccurrences = new boolean[faces.size()];
+    for (int i = 0; i < order.length; i++)
+      firstOccurrences[order[i]] = i == 0 || Arrays.compare(sortedIndices, order[i - 1] * 3, order[i - 1] * 3 + 3, sortedIndices, order[i] * 3, order[i] * 3 + 3) != 0;
+    return firstOccurrences;
+  }
+
+  private static int hash(int x, int y, int z) {
+    int h = (x * 0x9E3779B1 + y) * 0x9E3779B1 + z;
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    return h ^ (h >>> 13);
+  }
+
+  private int addUniqueVertexAndGetIndex(int oldIndex, int[] newIndices, List<Vector3> newVertices) {
+    if (newIndices[oldIndex] == -1) {
       newIndices[oldIndex] = newVertices.size();
       newVertices.add(vertices.get(oldIndex));
     }
@@ -63,20 +201,111 @@ public class MeshData {
   }
 
   public void sort() {
+    moveOnHeap();
     sortVertices();
     sortFaces();
+    hasFingerprint = false;
+    bounds = MeshBounds.of(this);
   }
 
-  private void sortVertices() {
-    Map<Vector3, Integer> oldIndexByVertex = new HashMap<>();
-    for (int i = 0; i < vertices.size(); i++) {
-      oldIndexByVertex.put(vertices.get(i), i);
+  /**
+   * Alternative to {@link #sort()}, which orders vertices and faces along a Morton (Z-order) curve through the bounding box, so faces which are close
+   * in space are also close in memory. Ties are broken by coordinates and vertex indices, so the result only depends on the mesh content, like with
+   * {@link #sort()}.
+   */
+  public void sortSpatially() {
+    moveOnHeap();
+    MeshBounds bounds = MeshBounds.of(this);
+    long[] vertexCodes = new long[vertices.size()];
+    for (int i = 0; i < vertexCodes.length; i++) {
+      Vector3 v = vertices.get(i);
+      vertexCodes[i] = getMortonCode(v.x, v.y, v.z, bounds);
     }
-    vertices.sort(null);
+    int[] vertexOrder = IndexSorter.identity(vertices.size());
+    IndexSorter.sort(vertexOrder, (a, b) -> {
+      int diff = Long.compare(vertexCodes[a], vertexCodes[b]);
+      return diff != 0 ? diff : vertices.get(a).compareTo(vertices.get(b));
+    });
     int[] newIndices = new int[vertices.size()];
-    for (int i = 0; i < vertices.size(); i++) {
-      newIndices[oldIndexByVertex.get(vertices.get(i))] = i;
+    List<Vector3> newVertices = new ArrayList<>(vertices.size());
+    for (int i = 0; i < vertexOrder.length; i++) {
+      newIndices[vertexOrder[i]] = i;
+      newVertices.add(vertices.get(vertexOrder[i]));
+    }
+    vertices = newVertices;
+    long[] faceCodes = new long[faces.size()];
+    for (int i = 0; i < faceCodes.length; i++) {
+      MeshFace face = faces.get(i);
+      face.v0 = newIndices[face.v0];
+      face.v1 = newIndices[face.v1];
+      face.v2 = newIndices[face.v2];
+      face.sort();
+      Vector3 a = vertices.get(face.v0), b = vertices.get(face.v1), c = vertices.get(face.v2);
+      faceCodes[i] = getMortonCode((a.x + b.x + c.x) / 3, (a.y + b.y + c.y) / 3, (a.z + b.z + c.z) / 3, bounds);
+    }
+    int[] faceOrder = IndexSorter.identity(faces.size());
+    IndexSorter.sort(faceOrder, (a, b) -> {
+      int diff = Long.compare(faceCodes[a], faceCodes[b]);
+      return diff != 0 ? diff : faces.get(a).compareTo(faces.get(b));
+    });
+    List<MeshFace> newFaces = new ArrayList<>(faces.size());
+    for (int i : faceOrder)
+      newFaces.add(faces.get(i));
+    faces = newFaces;
+    hasFingerprint = false;
+    this.bounds = bounds;
+  }
+
+  /**
+   * @return The position quantized to 21 bits per axis within the bounds, with interleaved bits
+   */
+  private static long getMortonCode(float x, float y, float z, MeshBounds bounds) {
+    return spreadBits(quantize(x, bounds.min.x, bounds.max.x)) | spreadBits(quantize(y, bounds.min.y, bounds.max.y)) << 1
+        | spreadBits(quantize(z, bounds.min.z, bounds.max.z)) << 2;
+  }
+
+  private static long quantize(float value, float min, float max) {
+    if (max <= min)
+      return 0;
+    return Math.clamp((long) ((value - min) / (max - min) * 0x1FFFFF), 0, 0x1FFFFF);
+  }
+
+  /**
+   * @return The lower 21 bits of value, spread to every third bit
+   */
+  private static long spreadBits(long value) {
+    value = (value | value << 32) & 0x1F00000000FFFFL;
+    value = (value | value << 16) & 0x1F0000FF0000FFL;
+    value = (value | value << 8) & 0x100F00F00F00F00FL;
+    value = (value | value << 4) & 0x10C30C30C30C30C3L;
+    value = (value | value << 2) & 0x1249249249249249L;
+    return value;
+  }
+
+  /**
+   * Argsorts the vertices by their packed coordinates, in the same order as {@link Vector3#compareTo(Vector3)}. A new list is created, since vertex
+   * lists may be shared between parts of the same CGF node when compacting is disabled.
+   */
+  private void sortVertices() {
+    long[] xyKeys = new long[vertices.size()];
+    int[] zKeys = new int[vertices.size()];
+    for (int i = 0; i < xyKeys.length; i++) {
+      Vector3 v = vertices.get(i);
+      xyKeys[i] = (long) toSortableInt(v.x) << 32 | (toSortableInt(v.y) ^ Integer.MIN_VALUE) & 0xFFFFFFFFL;
+      zKeys[i] = toSortableInt(v.z);
     }
+    int[] order = IndexSorter.identity(vertices.size());
+    IndexSorter.sort(order, (a, b) -> {
+      int diff = Long.compare(xyKeys[a], xyKeys[b]);
+      return diff != 0 ? diff : Integer.compare(zKeys[a], zKeys[b]);
+    });
+    int[] newIndices = new int[order.length];
+    List<Vector3> newVertices = new ArrayList<>(order.length);
+    for (int i = 0; i < order.length; i++) {
+      newIndices[order[i]] = i;
+      newVertices.add(vertices.get(order[i]));
+    }
+    vertices = newVertices;
     for (MeshFace face : faces) {
       face.v0 = newIndices[face.v0];
       face.v1 = newIndices[face.v1];
@@ -84,9 +313,95 @@ public class MeshData {
     }
   }
 
+  /**
+   * @return An int whose signed order matches {@link Float#compare(float, float)}
+   */
+  private static int toSortableInt(float value) {
+    int bits = Float.floatToIntBits(value);
+    return bits ^ (bits >> 31 & Integer.MAX_VALUE);
+  }
+
+  /**
+   * Sorts the canonical face keys, which are ordered like sorted faces, and writes them back into the existing face objects.
+   */
   private void sortFaces() {
-    faces.forEach(MeshFace::sort);
-    faces.sort(null);
+    if (vertices.size() > MeshFace.MAX_PACKED_VERTEX_INDEX + 1) { // only possible with disabled compacting
+      faces.forEach(MeshFace::sort);
+      faces.sort(null);
+      return;
+    }
+    long[] keys = new long[faces.size()];
+    for (int i = 0; i < keys.length; i++)
+      keys[i] = faces.get(i).getCanonicalKey();
+    if (keys.length > 1 << 15)
+      Arrays.parallelSort(keys);
+    else
+      Arrays.sort(keys);
+    for (int i = 0; i < keys.length; i++) {
+      MeshFace face = faces.get(i);
+      face.v0 = (int) (keys[i] >>> 42);
+      face.v1 = (int) (keys[i] >>> 21) & MeshFace.MAX_PACKED_VERTEX_INDEX;
+      face.v2 = (int) keys[i] & MeshFace.MAX_PACKED_VERTEX_INDEX;
+    }
+  }
+
+  /**
+   * Moves vertices and faces into a buffer of the arena and replaces both lists with read-only views of it, so the Java heap only holds this object.
+   * Cached values like the fingerprint and bounds are kept. The mesh can still be modified, which copies the data back to the heap first.
+   */
+  public void moveOffHeap(OffHeapArena arena) {
+    if (vertices instanceof OffHeapVertexList && faces instanceof OffHeapFaceList)
+      return;
+    ByteBuffer buffer = arena.allocate((vertices.size() + faces.size()) * 3 * Integer.BYTES);
+    IntBuffer vertexBits = buffer.slice(0, vertices.size() * 3 * Integer.BYTES).order(buffer.order()).asIntBuffer();
+    for (Vector3 vertex : vertices) {
+      vertexBits.put(Float.floatToIntBits(vertex.x));
+      vertexBits.put(Float.floatToIntBits(vertex.y));
+      vertexBits.put(Float.floatToIntBits(vertex.z));
+    }
+    IntBuffer faceIndices = buffer.slice(vertexBits.capacity() * Integer.BYTES, faces.size() * 3 * Integer.BYTES).order(buffer.order()).asIntBuffer();
+    for (MeshFace face : faces) {
+      faceIndices.put(face.v0);
+      faceIndices.put(face.v1);
+      faceIndices.put(face.v2);
+    }
+    vertices = new OffHeapVertexList(vertexBits.flip());
+    faces = new OffHeapFaceList(faceIndices.flip());
+  }
+
+  private void moveOnHeap() {
+    if (vertices instanceof OffHeapVertexList)
+      vertices = new ArrayList<>(vertices);
+    if (faces instanceof OffHeapFaceList)
+      faces = new ArrayList<>(faces);
+  }
+
+  /**
+   * The fingerprint is a 64-bit hash over the complete mesh content and is cached until the mesh is compacted or sorted. Meshes which are equal
+   * according to {@link #equals(Object)} always have the same fingerprint, so a full comparison is only needed when fingerprints match.
+   */
+  public long getFingerprint() {
+    if (!hasFingerprint) {
+      long h = mix(0, (long) vertices.size() << 32 | faces.size());
+      h = mix(h, (long) materialId << 32 | collisionIntention);
+      for (Vector3 vertex : vertices) {
+        h = mix(h, (long) Float.floatToIntBits(vertex.x) << 32 | Float.floatToIntBits(vertex.y) & 0xFFFFFFFFL);
+        h = mix(h, Float.floatToIntBits(vertex.z));
+      }
+      for (MeshFace face : faces)
+        h = mix(h, face.getCanonicalKey()); // MeshFace.equals ignores the index order
+      h ^= h >>> 33;
+      h *= 0xFF51AFD7ED558CCDL;
+      h ^= h >>> 33;
+      h *= 0xC4CEB9FE1A85EC53L;
+      fingerprint = h ^ (h >>> 33);
+      hasFingerprint = true;
+    }
+    return fingerprint;
+  }
+
+  private static long mix(long h, long value) {
+    return Long.rotateLeft(h ^ value * 0x9E3779B97F4A7C15L, 31) * 0xC2B2AE3D27D4EB4FL + 0x165667B19E3779F9L;
   }
 
   @Override
@@ -94,11 +409,11 @@ public class MeshData {
     if (this == o) return true;
     if (o == null || getClass() != o.getClass()) return false;
     MeshData m = (MeshData) o;
-    return materialId == m.materialId && collisionIntention == m.collisionIntention && vertices.equals(m.vertices) && faces.equals(m.faces);
+    return getFingerprint() == m.getFingerprint() && materialId == m.materialId && collisionIntention == m.collisionIntention && vertices.equals(m.vertices) && faces.equals(m.faces);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(vertices.size(), faces.size(), materialId, collisionIntention);
+    return Long.hashCode(getFingerprint());
   }
 }
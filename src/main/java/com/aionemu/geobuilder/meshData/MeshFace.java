@@ -2,6 +2,7 @@ package com.aionemu.geobuilder.meshData;
 
 public class MeshFace implements Comparable<MeshFace> {
 
+  public static final int MAX_PACKED_VERTEX_INDEX = (1 << 21) - 1;
   public int v0, v1, v2;
 
   public boolean isDegenerate() {
@@ -27,6 +28,16 @@ public class MeshFace implements Comparable<MeshFace> {
     }
   }
 
+  /**
+   * @return The ascending vertex indices packed into 21 bits each, so all rotations and windings of the same triangle share one key
+   */
+  public long getCanonicalKey() {
+    int min = Math.min(v0, Math.min(v1, v2));
+    int max = Math.max(v0, Math.max(v1, v2));
+    int mid = v0 + v1 + v2 - min - max;
+    return (long) min << 42 | (long) mid << 21 | max;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
@@ -42,7 +53,7 @@ public class MeshFace implements Comparable<MeshFace> {
 
   @Override
   public int hashCode() {
-    return v0 + v1 + v2;
+    return Long.hashCode(getCanonicalKey() * 0x9E3779B97F4A7C15L);
   }
 
   @Override
@@ -0,0 +1,84 @@
+package com.aionemu.geobuilder.meshData;
+
+import com.aionemu.geobuilder.utils.Vector3;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates simplified levels of detail of mesh parts for coarse queries, like visibility checks over long distances. Each level is simplified from the
+ * full detail part via {@link MeshSimplifier}, so its error is bounded by the distance to the original surface and doesn't add up over levels.
+ * Levels which barely reduce the face count of the previous level are skipped.
+ */
+public class MeshLodGenerator {
+
+  /**
+   * Minimum share of faces of the previous level which a level must remove to be kept
+   */
+  private static final float MIN_FACE_REDUCTION = 0.25f;
+
+  private final List<MeshSimplifier> simplifiers = new ArrayList<>();
+
+  /**
+   * @param maxErrors Maximum distances in world units between each level and the original surface of physical collision meshes
+   */
+  public MeshLodGenerator(List<Float> maxErrors) {
+    maxErrors.stream().sorted().distinct().forEach(maxError -> simplifiers.add(new MeshSimplifier(maxError)));
+  }
+
+  /**
+   * @return The levels of detail in descending detail, empty if simplification doesn't reduce the part enough
+   */
+  public List<MeshLod> generate(MeshData part) {
+    List<MeshLod> lods = new ArrayList<>();
+    for (MeshSimplifier simplifier : simplifiers) {
+      MeshData lod = copy(part);
+      simplifier.simplify(lod);
+      lods.add(new MeshLod(simplifier.getMaxError(part.collisionIntention), lod));
+    }
+    return removeRedundant(lods, part.faces.size());
+  }
+
+  /**
+   * @param faceCount The face count of the full detail part as written, which may already be simplified further than the part the levels were
+   *          created from
+   * @return The levels which reduce the face count of the previous level (or the full detail part) enough
+   */
+  public List<MeshLod> removeRedundant(List<MeshLod> lods, int faceCount) {
+    List<MeshLod> reducingLods = new ArrayList<>();
+    int previousFaceCount = faceCount;
+    for (MeshLod lod : lods) {
+      if (lod.mesh().faces.size() > previousFaceCount * (1 - MIN_FACE_REDUCTION))
+        continue;
+      reducingLods.add(lod);
+      previousFaceCount = lod.mesh().faces.size();
+    }
+    return reducingLods;
+  }
+
+  /**
+   * @return A copy whose vertices and faces can be modified without affecting the part
+   */
+  private static MeshData copy(MeshData part) {
+    MeshData copy = new MeshData();
+    copy.vertices = new ArrayList<>(part.vertices.size());
+    for (Vector3 vertex : part.vertices)
+      copy.vertices.add(new Vector3(vertex.x, vertex.y, vertex.z));
+    copy.faces = new ArrayList<>(part.faces.size());
+    for (MeshFace face : part.faces) {
+      MeshFace faceCopy = new MeshFace();
+      faceCopy.v0 = face.v0;
+      faceCopy.v1 = face.v1;
+      faceCopy.v2 = face.v2;
+      copy.faces.add(faceCopy);
+    }
+    copy.materialId = part.materialId;
+    copy.collisionIntention = part.collisionIntention;
+    return copy;
+  }
+
+  /**
+   * @param maxError Maximum distance in world units between the level and the full detail surface
+   */
+  public record MeshLod(float maxError, MeshData mesh) {}
+}
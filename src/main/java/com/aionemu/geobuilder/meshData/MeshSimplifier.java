@@ -0,0 +1,397 @@
+package com.aionemu.geobuilder.meshData;
+
+import com.aionemu.geobuilder.utils.Vector3;
+
+import java.util.*;
+
+/**
+ * Reduces the triangle count of meshes via quadric error edge collapses (Garland and Heckbert). Vertices are only moved onto one of their neighbors,
+ * so no new positions are introduced. Each vertex quadric sums the squared distances to the planes of its original faces, which bounds the distance
+ * to the original surface. Open edges add perpendicular planes, so mesh borders keep their shape.<br>
+ * <br>
+ * Collapses are processed in the order of their error, so coplanar triangles are merged first (zero error) before curved areas are decimated up to
+ * the error budget. Edges which are shared by more than two faces keep their vertices, and collapses which would flip a face or make the surface
+ * non-manifold are rejected.
+ */
+public class MeshSimplifier {
+
+  /**
+   * Factors for the maximum error per collision intention. Walk/NoWalk obstacles only need coarse shapes, all other intentions keep the base error.
+   * Meshes with multiple intentions use the strictest one.
+   */
+  private static final Map<CollisionIntention, Float> ERROR_FACTORS = new EnumMap<>(Map.of(
+      CollisionIntention.PHYSICAL, 1f,
+      CollisionIntention.PHYSICAL_SEE_THROUGH, 1f,
+      CollisionIntention.MATERIAL, 1f,
+      CollisionIntention.SKILL, 1f,
+      CollisionIntention.DOOR, 1f,
+      CollisionIntention.WALK, 4f));
+
+  private final float maxError;
+
+  /**
+   * @param maxError Maximum distance in world units between the simplified and the original surface of physical collision meshes
+   */
+  public MeshSimplifier(float maxError) {
+    if (!(maxError > 0))
+      throw new IllegalArgumentException("Simplification error must be positive: " + maxError);
+    this.maxError = maxError;
+  }
+
+  public float getMaxError(int collisionIntention) {
+    float factor = Float.MAX_VALUE;
+    for (Map.Entry<CollisionIntention, Float> e : ERROR_FACTORS.entrySet()) {
+      if ((collisionIntention & e.getKey().getId()) != 0)
+        factor = Math.min(factor, e.getValue());
+    }
+    return maxError * (factor == Float.MAX_VALUE ? 1 : factor);
+  }
+
+  /**
+   * Simplifies the (compacted) mesh and removes the vertices which are no longer used.
+   *
+   * @return The number of removed faces
+   */
+  public int simplify(MeshData mesh) {
+    int oldFaceCount = mesh.faces.size();
+    if (oldFaceCount < 2)
+      return 0;
+    // vertex and face indices must fit in the 21-bit fields of the packed edge keys
+    if (oldFaceCount > MeshFace.MAX_PACKED_VERTEX_INDEX + 1 || mesh.vertices.size() > MeshFace.MAX_PACKED_VERTEX_INDEX + 1)
+      return 0;
+    float error = getMaxError(mesh.collisionIntention);
+    new Simplification(mesh, (double) error * error).run();
+    mesh.compact();
+    return oldFaceCount - mesh.faces.size();
+  }
+
+  private static class Simplification {
+
+    private final MeshData mesh;
+    private final double maxErrorSq;
+    private final double[] xyz; // relative to the first vertex to keep the quadrics numerically stable
+    private final double[] quadrics; // upper triangle of the symmetric 4x4 matrix per vertex
+    private final int[] faceVertices;
+    private final boolean[] deadFaces;
+    private final boolean[] removedVertices, lockedVertices;
+    private final int[][] vertexFaces;
+    private final int[] vertexFaceCounts;
+    private final int[] marks, marks2;
+    private int mark;
+    private final CollapseQueue queue = new CollapseQueue();
+
+    private Simplification(MeshData mesh, double maxErrorSq) {
+      this.mesh = mesh;
+      this.maxErrorSq = maxErrorSq;
+      int vertexCount = mesh.vertices.size(), faceCount = mesh.faces.size();
+      xyz = new double[vertexCount * 3];
+      Vector3 origin = mesh.vertices.getFirst();
+      for (int i = 0; i < vertexCount; i++) {
+        Vector3 v = mesh.vertices.get(i);
+        xyz[i * 3] = v.x - origin.x;
+        xyz[i * 3 + 1] = v.y - origin.y;
+        xyz[i * 3 + 2] = v.z - origin.z;
+      }
+      quadrics = new double[vertexCount * 10];
+      faceVertices = new int[faceCount * 3];
+      deadFaces = new boolean[faceCount];
+      removedVertices = new boolean[vertexCount];
+      lockedVertices = new boolean[vertexCount];
+      vertexFaceCounts = new int[vertexCount];
+      marks = new int[vertexCount];
+      marks2 = new int[vertexCount];
+      for (int f = 0; f < faceCount; f++) {
+        MeshFace face = mesh.faces.get(f);
+        faceVertices[f * 3] = face.v0;
+        faceVertices[f * 3 + 1] = face.v1;
+        faceVertices[f * 3 + 2] = face.v2;
+        vertexFaceCounts[face.v0]++;
+        vertexFaceCounts[face.v1]++;
+        vertexFaceCounts[face.v2]++;
+      }
+      vertexFaces = new int[vertexCount][];
+      for (int v = 0; v < vertexCount; v++) {
+        vertexFaces[v] = new int[Math.max(4, vertexFaceCounts[v])];
+        vertexFaceCounts[v] = 0;
+      }
+      for (int f = 0; f < faceCount; f++) {
+        for (int i = 0; i < 3; i++)
+          addVertexFace(faceVertices[f * 3 + i], f);
+        double[] plane = getPlane(faceVertices[f * 3], faceVertices[f * 3 + 1], faceVertices[f * 3 + 2]);
+        if (plane != null) {
+          for (int i = 0; i < 3; i++)
+            addPlane(faceVertices[f * 3 + i], plane[0], plane[1], plane[2], plane[3]);
+        }
+      }
+      addBorderPlanes();
+    }
+
+    /**
+     * Adds planes through open edges which are perpendicular to their face, and locks vertices of edges with more than two faces.
+     */
+    private void addBorderPlanes() {
+      int faceCount = deadFaces.length;
+      long[] edges = new long[faceCount * 3]; // (min vertex << 21 | max vertex) << 21 | face
+      for (int f = 0; f < faceCount; f++) {
+        for (int i = 0; i < 3; i++) {
+          int a = faceVertices[f * 3 + i], b = faceVertices[f * 3 + (i + 1) % 3];
+          edges[f * 3 + i] = ((long) Math.min(a, b) << 21 | Math.max(a, b)) << 21 | f;
+        }
+      }
+      Arrays.sort(edges);
+      for (int start = 0, end; start < edges.length; start = end) {
+        long edge = edges[start] >>> 21;
+        for (end = start + 1; end < edges.length && edges[end] >>> 21 == edge; end++);
+        int a = (int) (edge >>> 21), b = (int) (edge & MeshFace.MAX_PACKED_VERTEX_INDEX);
+        if (end - start > 2) {
+          lockedVertices[a] = true;
+          lockedVertices[b] = true;
+        } else if (end - start == 1) {
+          int f = (int) (edges[start] & MeshFace.MAX_PACKED_VERTEX_INDEX);
+          double[] facePlane = getPlane(faceVertices[f * 3], faceVertices[f * 3 + 1], faceVertices[f * 3 + 2]);
+          if (facePlane == null)
+            continue;
+          double ex = xyz[b * 3] - xyz[a * 3], ey = xyz[b * 3 + 1] - xyz[a * 3 + 1], ez = xyz[b * 3 + 2] - xyz[a * 3 + 2];
+          double nx = ey * facePlane[2] - ez * facePlane[1], ny = ez * facePlane[0] - ex * facePlane[2], nz = ex * facePlane[1] - ey * facePlane[0];
+          double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+          if (length == 0)
+            continue;
+          nx /= length;
+          ny /= length;
+          nz /= length;
+          double d = -(nx * xyz[a * 3] + ny * xyz[a * 3 + 1] + nz * xyz[a * 3 + 2]);
+          addPlane(a, nx, ny, nz, d);
+          addPlane(b, nx, ny, nz, d);
+        }
+      }
+    }
+
+    private void run() {
+      for (int f = 0; f < deadFaces.length; f++) {
+        for (int i = 0; i < 3; i++)
+          pushCollapse(faceVertices[f * 3 + i], faceVertices[f * 3 + (i + 1) % 3]);
+      }
+      while (!queue.isEmpty()) {
+        double cost = queue.peekCost();
+        if (cost > maxErrorSq)
+          break;
+        long collapse = queue.pop();
+        int from = (int) (collapse >>> 32), to = (int) collapse;
+        if (removedVertices[from] || removedVertices[to] || getCost(from, to) != cost)
+          continue; // outdated entry, the current cost has been queued again
+        if (canCollapse(from, to))
+          collapse(from, to);
+      }
+      List<MeshFace> newFaces = new ArrayList<>(mesh.faces.size());
+      for (int f = 0; f < deadFaces.length; f++) {
+        if (!deadFaces[f]) {
+          MeshFace face = mesh.faces.get(f);
+          face.v0 = faceVertices[f * 3];
+          face.v1 = faceVertices[f * 3 + 1];
+          face.v2 = faceVertices[f * 3 + 2];
+          newFaces.add(face);
+        }
+      }
+      mesh.faces = newFaces;
+    }
+
+    private void pushCollapse(int a, int b) {
+      if (!lockedVertices[a]) {
+        double cost = getCost(a, b);
+        if (cost <= maxErrorSq)
+          queue.push(cost, (long) a << 32 | b);
+      }
+      if (!lockedVertices[b]) {
+        double cost = getCost(b, a);
+        if (cost <= maxErrorSq)
+          queue.push(cost, (long) b << 32 | a);
+      }
+    }
+
+    /**
+     * @return The combined quadric error of both vertices at the position of the target vertex
+     */
+    private double getCost(int from, int to) {
+      double x = xyz[to * 3], y = xyz[to * 3 + 1], z = xyz[to * 3 + 2];
+      int a = from * 10, b = to * 10;
+      double[] q = quadrics;
+      double cost = (q[a] + q[b]) * x * x + 2 * (q[a + 1] + q[b + 1]) * x * y + 2 * (q[a + 2] + q[b + 2]) * x * z + 2 * (q[a + 3] + q[b + 3]) * x
+          + (q[a + 4] + q[b + 4]) * y * y + 2 * (q[a + 5] + q[b + 5]) * y * z + 2 * (q[a + 6] + q[b + 6]) * y
+          + (q[a + 7] + q[b + 7]) * z * z + 2 * (q[a + 8] + q[b + 8]) * z
+          + q[a + 9] + q[b + 9];
+      return Math.max(0, cost);
+    }
+
+    private boolean canCollapse(int from, int to) {
+      // link condition: the only common neighbors may be the opposite vertices of the faces on the collapsed edge
+      int edgeFaces = 0;
+      int toMark = ++mark;
+      for (int i = 0; i < vertexFaceCounts[to]; i++) {
+        int f = vertexFaces[to][i];
+        if (!deadFaces[f]) {
+          for (int j = 0; j < 3; j++)
+            marks[faceVertices[f * 3 + j]] = toMark;
+        }
+      }
+      int commonNeighbors = 0;
+      for (int i = 0; i < vertexFaceCounts[from]; i++) {
+        int f = vertexFaces[from][i];
+        if (deadFaces[f])
+          continue;
+        boolean containsTo = false;
+        for (int j = 0; j < 3; j++) {
+          int v = faceVertices[f * 3 + j];
+          if (v == to)
+            containsTo = true;
+          else if (v != from && marks[v] == toMark && marks2[v] != toMark) {
+            marks2[v] = toMark;
+            commonNeighbors++;
+          }
+        }
+        if (containsTo)
+          edgeFaces++;
+        else if (flips(f, from, to))
+          return false;
+      }
+      return edgeFaces > 0 && commonNeighbors == edgeFaces;
+    }
+
+    private boolean flips(int f, int from, int to) {
+      int a = faceVertices[f * 3], b = faceVertices[f * 3 + 1], c = faceVertices[f * 3 + 2];
+      double[] oldNormal = getNormal(a, b, c);
+      double[] newNormal = getNormal(a == from ? to : a, b == from ? to : b, c == from ? to : c);
+      double newLengthSq = newNormal[0] * newNormal[0] + newNormal[1] * newNormal[1] + newNormal[2] * newNormal[2];
+      return newLengthSq == 0 || oldNormal[0] * newNormal[0] + oldNormal[1] * newNormal[1] + oldNormal[2] * newNormal[2] <= 0;
+    }
+
+    private void collapse(int from, int to) {
+      for (int i = 0; i < 10; i++)
+        quadrics[to * 10 + i] += quadrics[from * 10 + i];
+      removedVertices[from] = true;
+      for (int i = 0; i < vertexFaceCounts[from]; i++) {
+        int f = vertexFaces[from][i];
+        if (deadFaces[f])
+          continue;
+        if (faceVertices[f * 3] == to || faceVertices[f * 3 + 1] == to || faceVertices[f * 3 + 2] == to) {
+          deadFaces[f] = true;
+        } else {
+          for (int j = 0; j < 3; j++) {
+            if (faceVertices[f * 3 + j] == from)
+              faceVertices[f * 3 + j] = to;
+          }
+          addVertexFace(to, f);
+        }
+      }
+      for (int i = 0; i < vertexFaceCounts[to]; i++) {
+        int f = vertexFaces[to][i];
+        if (!deadFaces[f]) {
+          for (int j = 0; j < 3; j++) {
+            int v = faceVertices[f * 3 + j];
+            if (v != to)
+              pushCollapse(v, to);
+          }
+        }
+      }
+    }
+
+    private void addVertexFace(int v, int f) {
+      if (vertexFaceCounts[v] == vertexFaces[v].length)
+        vertexFaces[v] = Arrays.copyOf(vertexFaces[v], vertexFaces[v].length * 2);
+      vertexFaces[v][vertexFaceCounts[v]++] = f;
+    }
+
+    private void addPlane(int v, double a, double b, double c, double d) {
+      int i = v * 10;
+      quadrics[i] += a * a;
+      quadrics[i + 1] += a * b;
+      quadrics[i + 2] += a * c;
+      quadrics[i + 3] += a * d;
+      quadrics[i + 4] += b * b;
+      quadrics[i + 5] += b * c;
+      quadrics[i + 6] += b * d;
+      quadrics[i + 7] += c * c;
+      quadrics[i + 8] += c * d;
+      quadrics[i + 9] += d * d;
+    }
+
+    private double[] getNormal(int a, int b, int c) {
+      double abx = xyz[b * 3] - xyz[a * 3], aby = xyz[b * 3 + 1] - xyz[a * 3 + 1], abz = xyz[b * 3 + 2] - xyz[a * 3 + 2];
+      double acx = xyz[c * 3] - xyz[a * 3], acy = xyz[c * 3 + 1] - xyz[a * 3 + 1], acz = xyz[c * 3 + 2] - xyz[a * 3 + 2];
+      return new double[] { aby * acz - abz * acy, abz * acx - abx * acz, abx * acy - aby * acx };
+    }
+
+    /**
+     * @return The normalized plane equation (a, b, c, d) of the face, or null if it has no area
+     */
+    private double[] getPlane(int a, int b, int c) {
+      double[] n = getNormal(a, b, c);
+      double length = Math.sqrt(n[0] * n[0] + n[1] * n[1] + n[2] * n[2]);
+      if (length == 0)
+        return null;
+      double nx = n[0] / length, ny = n[1] / length, nz = n[2] / length;
+      return new double[] { nx, ny, nz, -(nx * xyz[a * 3] + ny * xyz[a * 3 + 1] + nz * xyz[a * 3 + 2]) };
+    }
+  }
+
+  /**
+   * Binary min heap of collapse candidates (from vertex << 32 | to vertex), ordered by cost and then by candidate for repeatable results.
+   */
+  private static class CollapseQueue {
+
+    private double[] costs = new double[64];
+    private long[] collapses = new long[64];
+    private int size;
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    double peekCost() {
+      return costs[0];
+    }
+
+    void push(double cost, long collapse) {
+      if (size == costs.length) {
+        costs = Arrays.copyOf(costs, size * 2);
+        collapses = Arrays.copyOf(collapses, size * 2);
+      }
+      int i = size++;
+      while (i > 0) {
+        int parent = (i - 1) / 2;
+        if (!isLess(cost, collapse, costs[parent], collapses[parent]))
+          break;
+        costs[i] = costs[parent];
+        collapses[i] = collapses[parent];
+        i = parent;
+      }
+      costs[i] = cost;
+      collapses[i] = collapse;
+    }
+
+    long pop() {
+      long top = collapses[0];
+      double cost = costs[--size];
+      long collapse = collapses[size];
+      int i = 0;
+      while (true) {
+        int child = i * 2 + 1;
+        if (child >= size)
+          break;
+        if (child + 1 < size && isLess(costs[child + 1], collapses[child + 1], costs[child], collapses[child]))
+          child++;
+        if (!isLess(costs[child], collapses[child], cost, collapse))
+          break;
+        costs[i] = costs[child];
+        collapses[i] = collapses[child];
+        i = child;
+      }
+      costs[i] = cost;
+      collapses[i] = collapse;
+      return top;
+    }
+
+    private static boolean isLess(double cost1, long collapse1, double cost2, long collapse2) {
+      return cost1 < cost2 || cost1 == cost2 && collapse1 < collapse2;
+    }
+  }
+}
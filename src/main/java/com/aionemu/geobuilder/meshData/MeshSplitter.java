@@ -0,0 +1,172 @@
+package com.aionemu.geobuilder.meshData;
+
+import com.aionemu.geobuilder.utils.IndexSorter;
+import com.aionemu.geobuilder.utils.Vector3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits mesh parts which exceed a vertex limit into spatial tiles. Faces are recursively divided at the median of their centroids along the longest
+ * axis, until each tile references few enough vertices. Vertices on tile borders are duplicated, faces and vertices keep their relative order within
+ * each tile.<br>
+ * Parts can never hold more than 0xFFFF vertices or faces, since counts and indices are stored as shorts. Tiles of up to 256 vertices are stored
+ * with 8-bit indices. Meshes can hold at most {@value #MAX_PARTS} parts, so the tile size is raised for meshes which would exceed this.
+ */
+public class MeshSplitter {
+
+  public static final int MAX_TILE_SIZE = 0xFFFF;
+  public static final int MAX_PARTS = 0xFF;
+
+  private final int maxVertices;
+
+  /**
+   * @param maxVertices Maximum number of vertices per part (3 to {@value #MAX_TILE_SIZE})
+   */
+  public MeshSplitter(int maxVertices) {
+    if (maxVertices < 3 || maxVertices > MAX_TILE_SIZE)
+      throw new IllegalArgumentException("Split size must be between 3 and " + MAX_TILE_SIZE + ": " + maxVertices);
+    this.maxVertices = maxVertices;
+  }
+
+  public boolean needsSplit(MeshData part) {
+    return needsSplit(part, maxVertices);
+  }
+
+  private static boolean needsSplit(MeshData part, int maxVertices) {
+    return part.vertices.size() > maxVertices || part.faces.size() > MAX_TILE_SIZE;
+  }
+
+  /**
+   * Splits all parts of a mesh. If the tiles would exceed {@value #MAX_PARTS} parts, the tile size is doubled (up to {@value #MAX_TILE_SIZE}) until
+   * they fit.
+   *
+   * @return The tiles of all parts in part order, parts which don't need to be split are kept as they are
+   * @throws IllegalArgumentException if the mesh doesn't fit in {@value #MAX_PARTS} parts even with the largest tiles
+   */
+  public List<MeshData> split(List<MeshData> parts) {
+    for (int tileSize = maxVertices; ; tileSize = Math.min(MAX_TILE_SIZE, tileSize * 2)) {
+      List<MeshData> tiles = new ArrayList<>();
+      for (MeshData part : parts) {
+        if (needsSplit(part, tileSize))
+          tiles.addAll(new Split(part, tileSize).run());
+        else
+          tiles.add(part);
+      }
+      if (tiles.size() <= MAX_PARTS)
+        return tiles;
+      if (tileSize == MAX_TILE_SIZE)
+        throw new IllegalArgumentException("Mesh with " + parts.size() + " parts needs " + tiles.size() + " tiles, but can hold at most " + MAX_PARTS);
+    }
+  }
+
+  private static class Split {
+
+    private final MeshData part;
+    private final int maxVertices;
+    private final float[] centroids;
+    private final int[] vertexStamps, newVertexIndices;
+    private final List<MeshData> tiles = new ArrayList<>();
+    private int stamp;
+
+    private Split(MeshData part, int maxVertices) {
+      this.part = part;
+      this.maxVertices = maxVertices;
+      float[] xyz = new float[part.vertices.size() * 3];
+      for (int i = 0; i < part.vertices.size(); i++) {
+        Vector3 vertex = part.vertices.get(i);
+        xyz[i * 3] = vertex.x;
+        xyz[i * 3 + 1] = vertex.y;
+        xyz[i * 3 + 2] = vertex.z;
+      }
+      centroids = new float[part.faces.size() * 3];
+      for (int i = 0; i < part.faces.size(); i++) {
+        MeshFace face = part.faces.get(i);
+        for (int axis = 0; axis < 3; axis++)
+          centroids[i * 3 + axis] = (xyz[face.v0 * 3 + axis] + xyz[face.v1 * 3 + axis] + xyz[face.v2 * 3 + axis]) / 3;
+      }
+      vertexStamps = new int[part.vertices.size()];
+      newVertexIndices = new int[part.vertices.size()];
+    }
+
+    private List<MeshData> run() {
+      split(IndexSorter.identity(part.faces.size()), 0, part.faces.size());
+      return tiles;
+    }
+
+    private void split(int[] faceIndices, int start, int end) {
+      if (end - start <= MAX_TILE_SIZE && countVertices(faceIndices, start, end) <= maxVertices) {
+        tiles.add(createTile(Arrays.copyOfRange(faceIndices, start, end)));
+        return;
+      }
+      float[] min = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE };
+      float[] max = { -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
+      for (int i = start; i < end; i++) {
+        for (int axis = 0; axis < 3; axis++) {
+          min[axis] = Math.min(min[axis], centroids[faceIndices[i] * 3 + axis]);
+          max[axis] = Math.max(max[axis], centroids[faceIndices[i] * 3 + axis]);
+        }
+      }
+      int axis = max[0] - min[0] >= max[1] - min[1] && max[0] - min[0] >= max[2] - min[2] ? 0 : max[1] - min[1] >= max[2] - min[2] ? 1 : 2;
+      int[] range = Arrays.copyOfRange(faceIndices, start, end);
+      IndexSorter.sort(range, (f1, f2) -> Float.compare(centroids[f1 * 3 + axis], centroids[f2 * 3 + axis]));
+      System.arraycopy(range, 0, faceIndices, start, range.length);
+      int mid = (start + end) >>> 1;
+      split(faceIndices, start, mid);
+      split(faceIndices, mid, end);
+    }
+
+    private int countVertices(int[] faceIndices, int start, int end) {
+      stamp++;
+      int count = 0;
+      for (int i = start; i < end; i++) {
+        MeshFace face = part.faces.get(faceIndices[i]);
+        for (int v : new int[] { face.v0, face.v1, face.v2 }) {
+          if (vertexStamps[v] != stamp) {
+            vertexStamps[v] = stamp;
+            count++;
+          }
+        }
+      }
+      return count;
+    }
+
+    private MeshData createTile(int[] faceIndices) {
+      Arrays.sort(faceIndices); // original face order
+      int vertexCount = countVertices(faceIndices, 0, faceIndices.length);
+      int[] vertexIndices = new int[vertexCount];
+      stamp++;
+      int i = 0;
+      for (int faceIndex : faceIndices) {
+        MeshFace face = part.faces.get(faceIndex);
+        for (int v : new int[] { face.v0, face.v1, face.v2 }) {
+          if (vertexStamps[v] != stamp) {
+            vertexStamps[v] = stamp;
+            vertexIndices[i++] = v;
+          }
+        }
+      }
+      Arrays.sort(vertexIndices); // original vertex order
+      MeshData tile = new MeshData();
+      tile.vertices = new ArrayList<>(vertexCount);
+      for (i = 0; i < vertexCount; i++) {
+        Vector3 vertex = part.vertices.get(vertexIndices[i]);
+        tile.vertices.add(new Vector3(vertex.x, vertex.y, vertex.z));
+        newVertexIndices[vertexIndices[i]] = i;
+      }
+      tile.faces = new ArrayList<>(faceIndices.length);
+      for (int faceIndex : faceIndices) {
+        MeshFace face = part.faces.get(faceIndex);
+        MeshFace newFace = new MeshFace();
+        newFace.v0 = newVertexIndices[face.v0];
+        newFace.v1 = newVertexIndices[face.v1];
+        newFace.v2 = newVertexIndices[face.v2];
+        tile.faces.add(newFace);
+      }
+      tile.materialId = part.materialId;
+      tile.collisionIntention = part.collisionIntention;
+      return tile;
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package com.aionemu.geobuilder.meshData;
+
+import java.nio.IntBuffer;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Read-only view of faces stored as packed vertex indices in a (direct) buffer. Each access creates a new {@link MeshFace}, changes to it are not
+ * written back.
+ */
+class OffHeapFaceList extends AbstractList<MeshFace> implements RandomAccess {
+
+  private final IntBuffer indices;
+
+  OffHeapFaceList(IntBuffer indices) {
+    this.indices = indices;
+  }
+
+  @Override
+  public MeshFace get(int index) {
+    MeshFace face = new MeshFace();
+    face.v0 = indices.get(index * 3);
+    face.v1 = indices.get(index * 3 + 1);
+    face.v2 = indices.get(index * 3 + 2);
+    return face;
+  }
+
+  @Override
+  public int size() {
+    return indices.limit() / 3;
+  }
+}
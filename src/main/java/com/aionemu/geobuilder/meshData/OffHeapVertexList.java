@@ -0,0 +1,38 @@
+package com.aionemu.geobuilder.meshData;
+
+import com.aionemu.geobuilder.utils.Vector3;
+
+import java.nio.IntBuffer;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Read-only view of vertices stored as packed float bits in a (direct) buffer. Each access creates a new {@link Vector3}, changes to it are not
+ * written back.
+ */
+class OffHeapVertexList extends AbstractList<Vector3> implements RandomAccess {
+
+  private final IntBuffer coordinateBits;
+
+  OffHeapVertexList(IntBuffer coordinateBits) {
+    this.coordinateBits = coordinateBits;
+  }
+
+  @Override
+  public Vector3 get(int index) {
+    return new Vector3(Float.intBitsToFloat(coordinateBits.get(index * 3)), Float.intBitsToFloat(coordinateBits.get(index * 3 + 1)),
+        Float.intBitsToFloat(coordinateBits.get(index * 3 + 2)));
+  }
+
+  @Override
+  public int size() {
+    return coordinateBits.limit() / 3;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o instanceof OffHeapVertexList other) // bits are stored via Float.floatToIntBits, so this matches Vector3.equals
+      return coordinateBits.equals(other.coordinateBits);
+    return super.equals(o);
+  }
+}
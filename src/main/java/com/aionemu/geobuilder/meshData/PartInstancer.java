@@ -0,0 +1,338 @@
+package com.aionemu.geobuilder.meshData;
+
+import com.aionemu.geobuilder.utils.EigenDecomposition;
+import com.aionemu.geobuilder.utils.LongHashSet;
+import com.aionemu.geobuilder.utils.Matrix4f;
+import com.aionemu.geobuilder.utils.Vector3;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Finds mesh parts which are rotated and/or translated copies of another part. Node transforms are baked into the vertices by the CGF loader, so
+ * such copies (pillars, fence or wall segments) are not equal, but can be stored as an instance of one canonical part plus a transform.<br>
+ * <br>
+ * Candidate parts need the same vertex and face counts, material and collision intention. Vertex correspondences are found by aligning local frames,
+ * which are built from the farthest vertex from the centroid and the vertex farthest from that axis. Symmetric parts have multiple equally valid
+ * reference vertices, so all of them (up to a limit) are tried. The transform is then fitted to all corresponding vertices (Horn's quaternion method)
+ * and only accepted if every transformed vertex lies within the tolerance and all faces match. With quantized vertices, the transform is verified
+ * against the decoded canonical vertices, since readers transform those.
+ */
+public class PartInstancer {
+
+  /**
+   * Parts with fewer vertices take less space than a transform
+   */
+  private static final int MIN_VERTICES = 8;
+  private static final int MAX_REFERENCE_CANDIDATES = 8;
+
+  private final double tolerance;
+  private final boolean quantizedVertices;
+
+  /**
+   * @param tolerance Maximum distance in world units between a transformed vertex of the canonical part and the corresponding vertex of the copy
+   * @param quantizedVertices If parts are written with {@link QuantizedVertices}
+   */
+  public PartInstancer(float tolerance, boolean quantizedVertices) {
+    if (!(tolerance > 0))
+      throw new IllegalArgumentException("Instancing tolerance must be positive: " + tolerance);
+    this.tolerance = tolerance;
+    this.quantizedVertices = quantizedVertices;
+  }
+
+  /**
+   * @param parts Distinct parts. The first part of each set of copies becomes the canonical one, so results only depend on the order of this list.
+   * @return Instances for all parts which are transformed copies of a preceding part
+   */
+  public Map<MeshData, PartInstance> findInstances(List<MeshData> parts) {
+    Map<List<Integer>, List<MeshData>> candidateGroups = parts.stream()
+        .filter(p -> p.vertices.size() >= MIN_VERTICES && p.vertices.size() <= MeshFace.MAX_PACKED_VERTEX_INDEX + 1)
+        .collect(Collectors.groupingBy(p -> List.of(p.vertices.size(), p.faces.size(), p.materialId, p.collisionIntention), LinkedHashMap::new, Collectors.toList()));
+    Map<MeshData, PartInstance> instances = new ConcurrentHashMap<>();
+    candidateGroups.values().parallelStream().filter(group -> group.size() > 1).forEach(group -> {
+      List<Shape> canonicalShapes = new ArrayList<>();
+      for (MeshData part : group) {
+        Shape shape = new Shape(part);
+        Matrix4f transform = null;
+        for (Shape canonical : canonicalShapes) {
+          if ((transform = findTransform(canonical, shape)) != null) {
+            instances.put(part, new PartInstance(canonical.part, transform));
+            break;
+          }
+        }
+        if (transform == null && !shape.frames.isEmpty())
+          canonicalShapes.add(shape);
+      }
+    });
+    return instances;
+  }
+
+  /**
+   * @return The transform from canonical to copy, or null if copy is not a transformed canonical within the tolerance
+   */
+  private Matrix4f findTransform(Shape canonical, Shape copy) {
+    int n = canonical.part.vertices.size();
+    if (Math.abs(canonical.maxRadius - copy.maxRadius) > 2 * tolerance)
+      return null;
+    if (Math.abs(canonical.radiusSqSum - copy.radiusSqSum) > n * (2 * copy.maxRadius + tolerance) * tolerance)
+      return null;
+    double[] canonicalFrame = canonical.frames.getFirst();
+    int[] correspondences = new int[n];
+    boolean[] used = new boolean[n];
+    for (double[] frame : copy.frames) {
+      if (findCorrespondences(canonical, canonicalFrame, copy, frame, correspondences, used)) {
+        Matrix4f transform = fitTransform(canonical, copy, correspondences);
+        if (verify(canonical, copy, correspondences, transform))
+          return transform;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Maps each canonical vertex to the nearest copy vertex after aligning both frames. Frame axes are only estimates, so vertices far from the
+   * reference axes may deviate by more than the tolerance, which is why the search radius is widened here.
+   */
+  private boolean findCorrespondences(Shape canonical, double[] canonicalFrame, Shape copy, double[] copyFrame, int[] correspondences, boolean[] used) {
+    Arrays.fill(used, false);
+    double[] rotation = multiplyTransposed(copyFrame, canonicalFrame);
+    VertexGrid grid = copy.getGrid();
+    double[] p = new double[3];
+    for (int i = 0; i < correspondences.length; i++) {
+      rotate(rotation, canonical.xyz, i, p);
+      int match = grid.findNearest(p[0], p[1], p[2], copy.searchRadius);
+      if (match == -1 || used[match])
+        return false;
+      used[match] = true;
+      correspondences[i] = match;
+    }
+    return true;
+  }
+
+  private boolean verify(Shape canonical, Shape copy, int[] correspondences, Matrix4f transform) {
+    double toleranceSq = tolerance * tolerance;
+    List<Vector3> canonicalVertices = canonical.getDecodedVertices(), copyVertices = copy.part.vertices;
+    for (int i = 0; i < correspondences.length; i++) {
+      Vector3 v = Vector3.transform(canonicalVertices.get(i), transform); // same float math as the server
+      Vector3 expected = copyVertices.get(correspondences[i]);
+      double dx = v.x - expected.x, dy = v.y - expected.y, dz = v.z - expected.z;
+      if (dx * dx + dy * dy + dz * dz > toleranceSq)
+        return false;
+    }
+    LongHashSet copyFaceKeys = copy.getFaceKeys();
+    LongHashSet mappedFaceKeys = new LongHashSet(copyFaceKeys.size());
+    MeshFace mapped = new MeshFace();
+    for (MeshFace face : canonical.part.faces) {
+      mapped.v0 = correspondences[face.v0];
+      mapped.v1 = correspondences[face.v1];
+      mapped.v2 = correspondences[face.v2];
+      long key = mapped.getCanonicalKey();
+      if (!copyFaceKeys.contains(key))
+        return false;
+      mappedFaceKeys.add(key);
+    }
+    return mappedFaceKeys.size() == copyFaceKeys.size();
+  }
+
+  /**
+   * Computes the least squares rotation between the centered point sets via Horn's quaternion method. The rotation is the eigenvector of the largest
+   * eigenvalue of a symmetric 4x4 matrix built from the cross-covariance of both sets.
+   */
+  private static Matrix4f fitTransform(Shape canonical, Shape copy, int[] correspondences) {
+    double sxx = 0, sxy = 0, sxz = 0, syx = 0, syy = 0, syz = 0, szx = 0, szy = 0, szz = 0;
+    for (int i = 0; i < correspondences.length; i++) {
+      double ax = canonical.xyz[i * 3], ay = canonical.xyz[i * 3 + 1], az = canonical.xyz[i * 3 + 2];
+      int j = correspondences[i];
+      double bx = copy.xyz[j * 3], by = copy.xyz[j * 3 + 1], bz = copy.xyz[j * 3 + 2];
+      sxx += ax * bx;
+      sxy += ax * by;
+      sxz += ax * bz;
+      syx += ay * bx;
+      syy += ay * by;
+      syz += ay * bz;
+      szx += az * bx;
+      szy += az * by;
+      szz += az * bz;
+    }
+    double[][] n = {
+        { sxx + syy + szz, syz - szy, szx - sxz, sxy - syx },
+        { syz - szy, sxx - syy - szz, sxy + syx, szx + sxz },
+        { szx - sxz, sxy + syx, -sxx + syy - szz, syz + szy },
+        { sxy - syx, szx + sxz, syz + szy, -sxx - syy + szz }
+    };
+    double[] q = largestEigenvector(n);
+    double w = q[0], x = q[1], y = q[2], z = q[3];
+    double[] r = {
+        1 - 2 * (y * y + z * z), 2 * (x * y - w * z), 2 * (x * z + w * y),
+        2 * (x * y + w * z), 1 - 2 * (x * x + z * z), 2 * (y * z - w * x),
+        2 * (x * z - w * y), 2 * (y * z + w * x), 1 - 2 * (x * x + y * y)
+    };
+    double[] t = new double[3];
+    rotate(r, canonical.centroid, 0, t);
+    // Vector3.transform multiplies row vectors, so the rotation is stored transposed
+    Matrix4f transform = new Matrix4f();
+    transform.m11 = (float) r[0];
+    transform.m21 = (float) r[1];
+    transform.m31 = (float) r[2];
+    transform.m12 = (float) r[3];
+    transform.m22 = (float) r[4];
+    transform.m32 = (float) r[5];
+    transform.m13 = (float) r[6];
+    transform.m23 = (float) r[7];
+    transform.m33 = (float) r[8];
+    transform.m41 = (float) (copy.centroid[0] - t[0]);
+    transform.m42 = (float) (copy.centroid[1] - t[1]);
+    transform.m43 = (float) (copy.centroid[2] - t[2]);
+    return transform;
+  }
+
+  private static double[] largestEigenvector(double[][] a) {
+    int size = a.length;
+    double[][] v = EigenDecomposition.diagonalize(a);
+    int largest = 0;
+    for (int i = 1; i < size; i++) {
+      if (a[i][i] > a[largest][largest])
+        largest = i;
+    }
+    double[] eigenvector = new double[size];
+    for (int i = 0; i < size; i++)
+      eigenvector[i] = v[i][largest];
+    return eigenvector;
+  }
+
+  /**
+   * @return a * b^T for row-major 3x3 matrices
+   */
+  private static double[] multiplyTransposed(double[] a, double[] b) {
+    double[] result = new double[9];
+    for (int row = 0; row < 3; row++)
+      for (int col = 0; col < 3; col++)
+        result[row * 3 + col] = a[row * 3] * b[col * 3] + a[row * 3 + 1] * b[col * 3 + 1] + a[row * 3 + 2] * b[col * 3 + 2];
+    return result;
+  }
+
+  private static void rotate(double[] rotation, double[] xyz, int index, double[] result) {
+    double x = xyz[index * 3], y = xyz[index * 3 + 1], z = xyz[index * 3 + 2];
+    result[0] = rotation[0] * x + rotation[1] * y + rotation[2] * z;
+    result[1] = rotation[3] * x + rotation[4] * y + rotation[5] * z;
+    result[2] = rotation[6] * x + rotation[7] * y + rotation[8] * z;
+  }
+
+  /**
+   * Translation and rotation invariant description of a part, with vertices relative to their centroid.
+   */
+  private class Shape {
+
+    private final MeshData part;
+    private final double[] centroid = new double[3];
+    private final double[] xyz;
+    private final double maxRadius, radiusSqSum;
+    /**
+     * Candidate frames as row-major 3x3 matrices whose columns are the local axes
+     */
+    private final List<double[]> frames = new ArrayList<>();
+    private double searchRadius;
+    private VertexGrid grid;
+    private LongHashSet faceKeys;
+    private List<Vector3> decodedVertices;
+
+    private Shape(MeshData part) {
+      this.part = part;
+      int n = part.vertices.size();
+      for (Vector3 v : part.vertices) {
+        centroid[0] += v.x;
+        centroid[1] += v.y;
+        centroid[2] += v.z;
+      }
+      for (int i = 0; i < 3; i++)
+        centroid[i] /= n;
+      xyz = new double[n * 3];
+      double[] radiiSq = new double[n];
+      double maxRadiusSq = 0, sum = 0;
+      for (int i = 0; i < n; i++) {
+        Vector3 v = part.vertices.get(i);
+        double x = v.x - centroid[0], y = v.y - centroid[1], z = v.z - centroid[2];
+        xyz[i * 3] = x;
+        xyz[i * 3 + 1] = y;
+        xyz[i * 3 + 2] = z;
+        radiiSq[i] = x * x + y * y + z * z;
+        maxRadiusSq = Math.max(maxRadiusSq, radiiSq[i]);
+        sum += radiiSq[i];
+      }
+      maxRadius = Math.sqrt(maxRadiusSq);
+      radiusSqSum = sum;
+      if (maxRadius > 4 * tolerance)
+        initFrames(radiiSq);
+    }
+
+    private void initFrames(double[] radiiSq) {
+      double minSecondaryRadius = Double.MAX_VALUE;
+      double[] distancesSq = new double[radiiSq.length];
+      for (int a : findReferenceCandidates(radiiSq, maxRadius - 2 * tolerance)) {
+        double r = Math.sqrt(radiiSq[a]);
+        double ax = xyz[a * 3] / r, ay = xyz[a * 3 + 1] / r, az = xyz[a * 3 + 2] / r;
+        double maxDistanceSq = 0;
+        for (int i = 0; i < distancesSq.length; i++) {
+          double dot = xyz[i * 3] * ax + xyz[i * 3 + 1] * ay + xyz[i * 3 + 2] * az;
+          distancesSq[i] = Math.max(0, radiiSq[i] - dot * dot);
+          maxDistanceSq = Math.max(maxDistanceSq, distancesSq[i]);
+        }
+        double maxDistance = Math.sqrt(maxDistanceSq);
+        if (maxDistance <= 4 * tolerance) // all vertices are on one line, so there is no defined orientation around it
+          continue;
+        minSecondaryRadius = Math.min(minSecondaryRadius, maxDistance);
+        for (int b : findReferenceCandidates(distancesSq, maxDistance - 4 * tolerance)) {
+          double dot = xyz[b * 3] * ax + xyz[b * 3 + 1] * ay + xyz[b * 3 + 2] * az;
+          double bx = xyz[b * 3] - dot * ax, by = xyz[b * 3 + 1] - dot * ay, bz = xyz[b * 3 + 2] - dot * az;
+          double length = Math.sqrt(bx * bx + by * by + bz * bz);
+          bx /= length;
+          by /= length;
+          bz /= length;
+          double cx = ay * bz - az * by, cy = az * bx - ax * bz, cz = ax * by - ay * bx;
+          frames.add(new double[] { ax, bx, cx, ay, by, cy, az, bz, cz });
+        }
+      }
+      // angular errors of the reference axes grow the positional error with the distance to the centroid
+      searchRadius = tolerance * (3 + 4 * maxRadius / minSecondaryRadius);
+      if (searchRadius > maxRadius / 8) // too thin to align reliably
+        frames.clear();
+    }
+
+    private List<Integer> findReferenceCandidates(double[] valuesSq, double minValue) {
+      double minValueSq = minValue > 0 ? minValue * minValue : 0;
+      List<Integer> candidates = new ArrayList<>();
+      for (int i = 0; i < valuesSq.length && candidates.size() < MAX_REFERENCE_CANDIDATES; i++) {
+        if (valuesSq[i] >= minValueSq)
+          candidates.add(i);
+      }
+      return candidates;
+    }
+
+    private VertexGrid getGrid() {
+      if (grid == null)
+        grid = new VertexGrid(xyz, searchRadius);
+      return grid;
+    }
+
+    private List<Vector3> getDecodedVertices() {
+      if (decodedVertices == null)
+        decodedVertices = quantizedVertices ? QuantizedVertices.getDecodedVertices(part.vertices) : part.vertices;
+      return decodedVertices;
+    }
+
+    private LongHashSet getFaceKeys() {
+      if (faceKeys == null) {
+        faceKeys = new LongHashSet(part.faces.size());
+        for (MeshFace face : part.faces)
+          faceKeys.add(face.getCanonicalKey());
+      }
+      return faceKeys;
+    }
+  }
+
+  /**
+   * A part which is stored as a transformed canonical part
+   */
+  public record PartInstance(MeshData canonicalPart, Matrix4f transform) {}
+}
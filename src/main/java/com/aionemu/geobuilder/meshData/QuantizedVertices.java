@@ -0,0 +1,83 @@
+package com.aionemu.geobuilder.meshData;
+
+import com.aionemu.geobuilder.utils.Vector3;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Vertices of a part as 16-bit coordinates relative to their bounding box, decoded as min + value * scale per axis. Everything which must match the
+ * geometry readers load (bounds, instance transforms, collision proxies) is computed from {@link #getDecodedVertices(List)} instead of the original
+ * floats.
+ */
+public class QuantizedVertices {
+
+  /**
+   * Maximum distance per axis in world units between a decoded and the original vertex
+   */
+  public static final float MAX_ERROR = 0.002f;
+
+  public final float[] min, scale;
+  /**
+   * Unsigned x, y and z value per vertex
+   */
+  public final short[] values;
+
+  private QuantizedVertices(float[] min, float[] scale, short[] values) {
+    this.min = min;
+    this.scale = scale;
+    this.values = values;
+  }
+
+  /**
+   * @return The quantized vertices, or null if any decoded coordinate would deviate by more than {@link #MAX_ERROR}
+   */
+  public static QuantizedVertices of(List<Vector3> vertices) {
+    float[] min = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE };
+    float[] max = { -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
+    for (Vector3 vec : vertices) {
+      min[0] = Math.min(min[0], vec.x);
+      min[1] = Math.min(min[1], vec.y);
+      min[2] = Math.min(min[2], vec.z);
+      max[0] = Math.max(max[0], vec.x);
+      max[1] = Math.max(max[1], vec.y);
+      max[2] = Math.max(max[2], vec.z);
+    }
+    float[] scale = new float[3];
+    for (int axis = 0; axis < 3; axis++)
+      scale[axis] = (max[axis] - min[axis]) / 0xFFFF;
+    short[] values = new short[vertices.size() * 3];
+    for (int i = 0; i < vertices.size(); i++) {
+      Vector3 vec = vertices.get(i);
+      float[] coordinates = { vec.x, vec.y, vec.z };
+      for (int axis = 0; axis < 3; axis++) {
+        int value = scale[axis] == 0 ? 0 : Math.clamp(Math.round((coordinates[axis] - min[axis]) / scale[axis]), 0, 0xFFFF);
+        if (Math.abs(decode(value, min, scale, axis) - coordinates[axis]) > MAX_ERROR)
+          return null;
+        values[i * 3 + axis] = (short) value;
+      }
+    }
+    return new QuantizedVertices(min, scale, values);
+  }
+
+  /**
+   * @return The vertices as readers decode them, which are the given vertices if they can't be quantized
+   */
+  public static List<Vector3> getDecodedVertices(List<Vector3> vertices) {
+    QuantizedVertices quantized = of(vertices);
+    return quantized == null ? vertices : quantized.decode();
+  }
+
+  public List<Vector3> decode() {
+    List<Vector3> decoded = new ArrayList<>(values.length / 3);
+    for (int i = 0; i < values.length; i += 3) {
+      decoded.add(new Vector3(decode(Short.toUnsignedInt(values[i]), min, scale, 0), decode(Short.toUnsignedInt(values[i + 1]), min, scale, 1),
+          decode(Short.toUnsignedInt(values[i + 2]), min, scale, 2)));
+    }
+    return decoded;
+  }
+
+  private static float decode(int value, float[] min, float[] scale, int axis) {
+    return min[axis] + value * scale[axis]; // same float math as the server
+  }
+}
@@ -0,0 +1,96 @@
+package com.aionemu.geobuilder.meshData;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Uniform spatial hash grid over a set of points, used for tolerance based vertex lookups. Cells are hashed into the upper bits of a sorted long
+ * array whose lower bits (at least 21, more for larger point sets) hold the point index, so the grid needs no per-cell allocations. Hash collisions
+ * between cells only add candidates, since all lookups check the actual distance.
+ */
+class VertexGrid {
+
+  private static final int MIN_INDEX_BITS = 21;
+
+  private final int indexBits;
+  private final long indexMask;
+  private final double[] xyz;
+  private final double cellSize;
+  private final long[] entries;
+
+  /**
+   * @param xyz Packed point coordinates (x, y, z for each point)
+   * @param cellSize Edge length of the cells, must not be smaller than the maximum lookup distance
+   */
+  VertexGrid(double[] xyz, double cellSize) {
+    indexBits = Math.max(MIN_INDEX_BITS, Integer.SIZE - Integer.numberOfLeadingZeros(Math.max(1, xyz.length / 3) - 1));
+    indexMask = (1L << indexBits) - 1;
+    this.xyz = xyz;
+    this.cellSize = cellSize;
+    entries = new long[xyz.length / 3];
+    for (int i = 0; i < entries.length; i++)
+      entries[i] = cellKey(cell(xyz[i * 3]), cell(xyz[i * 3 + 1]), cell(xyz[i * 3 + 2])) << indexBits | i;
+    Arrays.sort(entries);
+  }
+
+  /**
+   * @return The index of the nearest point within maxDistance of the given position, or -1 if there is none
+   */
+  int findNearest(double x, double y, double z, double maxDistance) {
+    return findNearest(x, y, z, maxDistance, index -> true);
+  }
+
+  /**
+   * @return The index of the nearest accepted point within maxDistance of the given position, or -1 if there is none
+   */
+  int findNearest(double x, double y, double z, double maxDistance, IntPredicate filter) {
+    long cx = cell(x), cy = cell(y), cz = cell(z);
+    double nearestDistanceSq = maxDistance * maxDistance;
+    int nearest = -1;
+    for (long dx = -1; dx <= 1; dx++) {
+      for (long dy = -1; dy <= 1; dy++) {
+        for (long dz = -1; dz <= 1; dz++) {
+          long key = cellKey(cx + dx, cy + dy, cz + dz);
+          for (int i = lowerBound(key << indexBits); i < entries.length && entries[i] >>> indexBits == key; i++) {
+            int index = (int) (entries[i] & indexMask);
+            double distanceSq = distanceSq(index, x, y, z);
+            if (distanceSq <= nearestDistanceSq && filter.test(index)) {
+              nearestDistanceSq = distanceSq;
+              nearest = index;
+            }
+          }
+        }
+      }
+    }
+    return nearest;
+  }
+
+  private double distanceSq(int index, double x, double y, double z) {
+    double dx = xyz[index * 3] - x, dy = xyz[index * 3 + 1] - y, dz = xyz[index * 3 + 2] - z;
+    return dx * dx + dy * dy + dz * dz;
+  }
+
+  private int lowerBound(long value) {
+    int low = 0, high = entries.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (entries[mid] < value)
+        low = mid + 1;
+      else
+        high = mid;
+    }
+    return low;
+  }
+
+  private long cell(double coordinate) {
+    return (long) Math.floor(coordinate / cellSize);
+  }
+
+  private long cellKey(long cx, long cy, long cz) {
+    long h = cx * 0x9E3779B97F4A7C15L ^ cy * 0xC2B2AE3D27D4EB4FL ^ cz * 0x165667B19E3779F9L;
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    return h >>> indexBits;
+  }
+}
@@ -117,7 +117,12 @@ public class PakFile implements AutoCloseable {
     return unpak(pakFileHeader);
   }
 
+  /**
+   * @return The file content. Stored, unencrypted files are returned as a read-only slice of the mapped pak file, others are unpacked to the heap.
+   */
   private ByteBuffer unpak(PakFileHeader pakFileHeader) throws IOException {
+    if (pakFileHeader.compMethod == 0 && decryptTable == null)
+      return buffer.slice((int) pakFileHeader.bodyStartPosition, (int) pakFileHeader.getBodySize()).order(ByteOrder.LITTLE_ENDIAN);
     ByteBufferArrayOutputStream out = new ByteBufferArrayOutputStream(pakFileHeader.uncompressedSz);
     DataOutputStream outputStream = new DataOutputStream(pakFileHeader.compMethod == 0 ? out : new InflaterOutputStream(out, new Inflater(true)));
     writeBody(outputStream, pakFileHeader);
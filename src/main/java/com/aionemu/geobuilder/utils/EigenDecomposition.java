@@ -0,0 +1,54 @@
+package com.aionemu.geobuilder.utils;
+
+/**
+ * Cyclic Jacobi eigenvalue iteration for small symmetric matrices.
+ */
+public class EigenDecomposition {
+
+  /**
+   * Diagonalizes the symmetric matrix in place, so the eigenvalues end up on its diagonal.
+   *
+   * @return The eigenvectors as columns, in the order of the eigenvalues on the diagonal of a
+   */
+  public static double[][] diagonalize(double[][] a) {
+    int size = a.length;
+    double[][] v = new double[size][size];
+    for (int i = 0; i < size; i++)
+      v[i][i] = 1;
+    for (int sweep = 0; sweep < 50; sweep++) {
+      double offDiagonal = 0;
+      for (int p = 0; p < size; p++)
+        for (int q = p + 1; q < size; q++)
+          offDiagonal += a[p][q] * a[p][q];
+      if (offDiagonal < 1e-30)
+        break;
+      for (int p = 0; p < size; p++) {
+        for (int q = p + 1; q < size; q++) {
+          if (a[p][q] == 0)
+            continue;
+          double theta = (a[q][q] - a[p][p]) / (2 * a[p][q]);
+          double t = Math.signum(theta) / (Math.abs(theta) + Math.sqrt(theta * theta + 1));
+          if (theta == 0)
+            t = 1;
+          double c = 1 / Math.sqrt(t * t + 1), s = t * c;
+          for (int k = 0; k < size; k++) {
+            double akp = a[k][p], akq = a[k][q];
+            a[k][p] = c * akp - s * akq;
+            a[k][q] = s * akp + c * akq;
+          }
+          for (int k = 0; k < size; k++) {
+            double apk = a[p][k], aqk = a[q][k];
+            a[p][k] = c * apk - s * aqk;
+            a[q][k] = s * apk + c * aqk;
+          }
+          for (int k = 0; k < size; k++) {
+            double vkp = v[k][p], vkq = v[k][q];
+            v[k][p] = c * vkp - s * vkq;
+            v[k][q] = s * vkp + c * vkq;
+          }
+        }
+      }
+    }
+    return v;
+  }
+}
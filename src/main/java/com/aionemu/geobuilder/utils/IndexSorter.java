@@ -0,0 +1,65 @@
+package com.aionemu.geobuilder.utils;
+
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Stable merge sort for int arrays with a custom comparator, so index permutations can be sorted without boxing each element. Large arrays are
+ * sorted in parallel.
+ */
+public class IndexSorter {
+
+  private static final int INSERTION_SORT_THRESHOLD = 16;
+  private static final int PARALLEL_THRESHOLD = 1 << 15;
+
+  /**
+   * @param comparator Compares two array values, like {@link java.util.Comparator#compare(Object, Object)}
+   */
+  public static void sort(int[] values, IntBinaryOperator comparator) {
+    sort(values, values.clone(), 0, values.length, comparator);
+  }
+
+  /**
+   * @return Indices 0 to size - 1 in ascending order
+   */
+  public static int[] identity(int size) {
+    int[] indices = new int[size];
+    for (int i = 0; i < size; i++)
+      indices[i] = i;
+    return indices;
+  }
+
+  /**
+   * Sorts values[start, end) using buffer, whose range must contain the same values.
+   */
+  private static void sort(int[] values, int[] buffer, int start, int end, IntBinaryOperator comparator) {
+    if (end - start <= INSERTION_SORT_THRESHOLD) {
+      for (int i = start + 1; i < end; i++) {
+        int value = values[i];
+        int j = i;
+        for (; j > start && comparator.applyAsInt(values[j - 1], value) > 0; j--)
+          values[j] = values[j - 1];
+        values[j] = value;
+      }
+      return;
+    }
+    int mid = (start + end) >>> 1;
+    // sort both halves into the buffer, then merge them back
+    if (end - start > PARALLEL_THRESHOLD) {
+      ForkJoinTask.invokeAll(ForkJoinTask.adapt(() -> sort(buffer, values, start, mid, comparator)), ForkJoinTask.adapt(() -> sort(buffer, values, mid, end, comparator)));
+    } else {
+      sort(buffer, values, start, mid, comparator);
+      sort(buffer, values, mid, end, comparator);
+    }
+    if (comparator.applyAsInt(buffer[mid - 1], buffer[mid]) <= 0) {
+      System.arraycopy(buffer, start, values, start, end - start);
+      return;
+    }
+    for (int i = start, left = start, right = mid; i < end; i++) {
+      if (right >= end || left < mid && comparator.applyAsInt(buffer[left], buffer[right]) <= 0)
+        values[i] = buffer[left++];
+      else
+        values[i] = buffer[right++];
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package com.aionemu.geobuilder.utils;
+
+/**
+ * Insert-only hash set of primitive longs using open addressing with linear probing.
+ */
+public class LongHashSet {
+
+  private static final long EMPTY = 0;
+  private long[] table;
+  private boolean containsEmptyKey;
+  private int size;
+
+  public LongHashSet(int expectedSize) {
+    table = new long[tableSizeFor(expectedSize)];
+  }
+
+  /**
+   * @return True if the value was added, false if it was already present
+   */
+  public boolean add(long value) {
+    if (value == EMPTY) {
+      if (containsEmptyKey)
+        return false;
+      containsEmptyKey = true;
+      size++;
+      return true;
+    }
+    int mask = table.length - 1;
+    int slot = mix(value) & mask;
+    while (table[slot] != EMPTY) {
+      if (table[slot] == value)
+        return false;
+      slot = (slot + 1) & mask;
+    }
+    table[slot] = value;
+    if (++size * 2 > table.length)
+      grow();
+    return true;
+  }
+
+  public boolean contains(long value) {
+    if (value == EMPTY)
+      return containsEmptyKey;
+    int mask = table.length - 1;
+    for (int slot = mix(value) & mask; table[slot] != EMPTY; slot = (slot + 1) & mask) {
+      if (table[slot] == value)
+        return true;
+    }
+    return false;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  private void grow() {
+    long[] oldTable = table;
+    table = new long[oldTable.length * 2];
+    int mask = table.length - 1;
+    for (long value : oldTable) {
+      if (value != EMPTY) {
+        int slot = mix(value) & mask;
+        while (table[slot] != EMPTY)
+          slot = (slot + 1) & mask;
+        table[slot] = value;
+      }
+    }
+  }
+
+  private static int tableSizeFor(int expectedSize) {
+    return Integer.highestOneBit(Math.max(1, expectedSize * 2 - 1)) << 1;
+  }
+
+  private static int mix(long value) {
+    value ^= value >>> 33;
+    value *= 0xFF51AFD7ED558CCDL;
+    value ^= value >>> 33;
+    return (int) value;
+  }
+}
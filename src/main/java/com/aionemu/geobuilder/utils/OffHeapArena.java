@@ -0,0 +1,97 @@
+package com.aionemu.geobuilder.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Hands out slices of large direct buffers, so many small payloads can be stored outside the Java heap without a direct buffer (and its cleaner) per
+ * payload. Memory is released when the arena and all slices are no longer referenced.<br>
+ * Direct memory is limited by -XX:MaxDirectMemorySize, which defaults to the maximum heap size. If the arena has a memory budget, everything beyond
+ * it is spilled to a memory-mapped temp file instead, which the OS can page out to disk and read back on demand.
+ */
+public class OffHeapArena implements Closeable {
+
+  /**
+   * File extension of spill files. They're deleted on close, but remain if the JVM is killed.
+   */
+  public static final String SPILL_FILE_SUFFIX = ".spill";
+  private static final int CHUNK_SIZE = 16 * 1024 * 1024;
+
+  private final long memoryBudget;
+  private final Path spillFolder;
+  private FileChannel spillFile;
+  private long directBytes, spilledBytes;
+  private ByteBuffer chunk = ByteBuffer.allocateDirect(0);
+  private long allocatedBytes;
+
+  public OffHeapArena() {
+    this(Long.MAX_VALUE, null);
+  }
+
+  /**
+   * @param memoryBudget Maximum number of bytes to hold in direct memory
+   * @param spillFolder Folder for the temp file which holds all data beyond the memory budget
+   */
+  public OffHeapArena(long memoryBudget, Path spillFolder) {
+    this.memoryBudget = memoryBudget;
+    this.spillFolder = spillFolder;
+  }
+
+  /**
+   * @return A zeroed direct or memory-mapped buffer of the given size in native byte order
+   */
+  public synchronized ByteBuffer allocate(int size) {
+    allocatedBytes += size;
+    if (size > CHUNK_SIZE / 4) // large payloads would waste too much of a chunk
+      return allocateChunk(size).order(ByteOrder.nativeOrder());
+    if (chunk.remaining() < size)
+      chunk = allocateChunk(CHUNK_SIZE);
+    ByteBuffer slice = chunk.slice(chunk.position(), size).order(ByteOrder.nativeOrder());
+    chunk.position(chunk.position() + (size + 7 & ~7)); // keep slices 8-byte aligned
+    return slice;
+  }
+
+  private ByteBuffer allocateChunk(int size) {
+    if (directBytes + size <= memoryBudget) {
+      directBytes += size;
+      return ByteBuffer.allocateDirect(size);
+    }
+    try {
+      if (spillFile == null)
+        spillFile = FileChannel.open(Files.createTempFile(spillFolder, "meshes", SPILL_FILE_SUFFIX), StandardOpenOption.READ, StandardOpenOption.WRITE,
+            StandardOpenOption.DELETE_ON_CLOSE);
+      ByteBuffer buffer = spillFile.map(FileChannel.MapMode.READ_WRITE, spilledBytes, size); // grows the file
+      spilledBytes += size + 7 & ~7;
+      return buffer;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not spill to " + spillFolder, e);
+    }
+  }
+
+  public synchronized long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /**
+   * @return The size of the temp file, which holds all data beyond the memory budget
+   */
+  public synchronized long getSpilledBytes() {
+    return spilledBytes;
+  }
+
+  /**
+   * Closes the temp file, which gets deleted as soon as no slices of it are mapped anymore. Existing slices stay readable.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (spillFile != null)
+      spillFile.close();
+  }
+}
@@ -6,8 +6,8 @@ import org.jdom2.JDOMException;
 import org.jdom2.Parent;
 import org.jdom2.input.SAXBuilder;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
@@ -21,10 +21,9 @@ public class XmlParser {
     if (buffer.get() == (byte) 128) { // binary xml marker
       return parseBinaryXml(buffer);
     }
-    int offset = position + buffer.arrayOffset();
-    int length = buffer.limit() - position;
+    buffer.position(position);
     try {
-      return new SAXBuilder().build(new ByteArrayInputStream(buffer.array(), offset, length));
+      return new SAXBuilder().build(new ByteBufferInputStream(buffer));
     } catch (JDOMException e) {
       throw new IOException(e);
     }
@@ -82,4 +81,37 @@ public class XmlParser {
       return "";
     return new String(data, startIndex, endIndex - startIndex, StandardCharsets.UTF_16LE);
   }
-}
+
+  /**
+   * Reads the remaining bytes of any buffer (heap, direct or read-only mapped) without copying them into an intermediate array.
+   */
+  private static class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    private ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0)
+        return 0;
+      if (!buffer.hasRemaining())
+        return -1;
+      len = Math.min(len, buffer.remaining());
+      buffer.get(b, off, len);
+      return len;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
\ No newline at end of file
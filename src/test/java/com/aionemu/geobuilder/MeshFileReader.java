@@ -0,0 +1,257 @@
+package com.aionemu.geobuilder;
+
+import com.aionemu.geobuilder.MeshFileWriter.Feature;
+import com.aionemu.geobuilder.meshData.MeshFace;
+import com.aionemu.geobuilder.utils.Matrix4f;
+import com.aionemu.geobuilder.utils.Vector3;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Reads models.mesh files the way servers do, so tests can check what the {@link MeshFileWriter} wrote.
+ */
+class MeshFileReader {
+
+  final Set<Feature> features = EnumSet.noneOf(Feature.class);
+  final List<Mesh> meshes = new ArrayList<>();
+  final List<Integer> meshOffsets = new ArrayList<>();
+  final Map<Integer, List<Integer>> offsetsByLayer = new LinkedHashMap<>();
+  int meshCount = -1;
+  private final ByteBuffer bb;
+
+  /**
+   * @param hasHeader If the file starts with the signature and feature mask, which is the case if any feature is enabled
+   */
+  MeshFileReader(byte[] data, boolean hasHeader) {
+    bb = ByteBuffer.wrap(data);
+    if (hasHeader) {
+      byte[] signature = new byte[MeshFileWriter.SIGNATURE.length];
+      bb.get(signature);
+      if (!Arrays.equals(signature, MeshFileWriter.SIGNATURE))
+        throw new IllegalArgumentException("Invalid signature");
+      int mask = bb.getInt();
+      for (Feature feature : Feature.values()) {
+        if ((mask & feature.getMask()) != 0)
+          features.add(feature);
+      }
+    }
+    int end = data.length;
+    if (features.contains(Feature.LAYERS)) {
+      end = bb.getInt(data.length - 4);
+      readLayers(end);
+    }
+    if (features.contains(Feature.SHARED_PARTS) || features.contains(Feature.INSTANCED_PARTS))
+      readSharedParts(end);
+    else
+      readMeshes(end);
+    if (bb.position() != end)
+      throw new IllegalStateException("Read " + bb.position() + " of " + end + " bytes");
+  }
+
+  private void readLayers(int indexOffset) {
+    int position = bb.position();
+    bb.position(indexOffset);
+    int layerCount = Byte.toUnsignedInt(bb.get());
+    for (int i = 0; i < layerCount; i++) {
+      int intention = bb.getShort();
+      List<Integer> offsets = new ArrayList<>();
+      for (int j = bb.getInt(); j > 0; j--)
+        offsets.add(bb.getInt());
+      offsetsByLayer.put(intention, offsets);
+    }
+    bb.position(position);
+  }
+
+  private void readMeshes(int end) {
+    if (features.contains(Feature.MESH_IDS))
+      meshCount = bb.getInt();
+    while (bb.position() < end) {
+      meshOffsets.add(bb.position());
+      MeshHeader header = readMeshHeader();
+      List<Part> parts = new ArrayList<>();
+      for (int i = 0; i < header.partCount; i++)
+        parts.add(readPart());
+      meshes.add(new Mesh(header.name, header.bounds, header.proxyType, parts));
+    }
+  }
+
+  private void readSharedParts(int end) {
+    List<Part> partTable = new ArrayList<>();
+    for (int i = bb.getInt(); i > 0; i--)
+      partTable.add(readPart());
+    if (features.contains(Feature.MESH_IDS))
+      meshCount = bb.getInt();
+    while (bb.position() < end) {
+      meshOffsets.add(bb.position());
+      MeshHeader header = readMeshHeader();
+      List<Part> parts = new ArrayList<>();
+      for (int i = 0; i < header.partCount; i++) {
+        Part part = partTable.get(bb.getInt());
+        if (features.contains(Feature.INSTANCED_PARTS) && bb.get() != 0)
+          part = part.withTransform(readTransform());
+        parts.add(part);
+      }
+      meshes.add(new Mesh(header.name, header.bounds, header.proxyType, parts));
+    }
+  }
+
+  private MeshHeader readMeshHeader() {
+    byte[] name = new byte[Short.toUnsignedInt(bb.getShort())];
+    bb.get(name);
+    float[] bounds = features.contains(Feature.BOUNDS) ? readFloats(10) : null;
+    int proxyType = features.contains(Feature.COLLISION_PROXIES) ? readCollisionProxy() : 0;
+    return new MeshHeader(new String(name), bounds, proxyType, Byte.toUnsignedInt(bb.get()));
+  }
+
+  private int readCollisionProxy() {
+    int type = bb.get();
+    switch (type) {
+      case 0 -> {}
+      case 1 -> readFloats(15);
+      case 2 -> readFloats(7);
+      case 3 -> {
+        readFloats(Byte.toUnsignedInt(bb.get()) * 3);
+        bb.position(bb.position() + Byte.toUnsignedInt(bb.get()) * 3);
+      }
+      default -> throw new IllegalStateException("Unknown collision proxy type " + type);
+    }
+    return type;
+  }
+
+  private Matrix4f readTransform() {
+    float[] values = readFloats(12);
+    return new Matrix4f(values[3], values[6], values[9], 0, values[4], values[7], values[10], 0, values[5], values[8], values[11], 0, values[0], values[1],
+        values[2], 1);
+  }
+
+  private Part readPart() {
+    float[] bounds = features.contains(Feature.BOUNDS) ? readFloats(10) : null;
+    Geometry geometry = readGeometry();
+    int materialId = Byte.toUnsignedInt(bb.get());
+    int collisionIntention = Byte.toUnsignedInt(bb.get());
+    List<Lod> lods = new ArrayList<>();
+    if (features.contains(Feature.LODS)) {
+      for (int i = Byte.toUnsignedInt(bb.get()); i > 0; i--)
+        lods.add(new Lod(bb.getFloat(), readGeometry()));
+    }
+    return new Part(bounds, geometry, materialId, collisionIntention, lods, null);
+  }
+
+  private Geometry readGeometry() {
+    int vertexCount = Short.toUnsignedInt(bb.getShort());
+    List<Vector3> vertices = new ArrayList<>(vertexCount);
+    if (features.contains(Feature.QUANTIZED_VERTICES) && bb.get() == 1) {
+      float[] min = readFloats(3), scale = readFloats(3);
+      for (int i = 0; i < vertexCount; i++) {
+        float x = min[0] + Short.toUnsignedInt(bb.getShort()) * scale[0];
+        float y = min[1] + Short.toUnsignedInt(bb.getShort()) * scale[1];
+        float z = min[2] + Short.toUnsignedInt(bb.getShort()) * scale[2];
+        vertices.add(new Vector3(x, y, z));
+      }
+    } else {
+      for (int i = 0; i < vertexCount; i++)
+        vertices.add(new Vector3(bb.getFloat(), bb.getFloat(), bb.getFloat()));
+    }
+    int faceCount = Short.toUnsignedInt(bb.getShort());
+    List<MeshFace> faces = new ArrayList<>(faceCount);
+    if (features.contains(Feature.COMPRESSED_INDICES)) {
+      int end = bb.getInt() + bb.position();
+      int previous = 0;
+      for (int i = 0; i < faceCount; i++) {
+        int zigzag = readVarInt();
+        int v0 = previous + (zigzag >>> 1 ^ -(zigzag & 1));
+        faces.add(face(v0, v0 + readVarInt(), v0 + readVarInt()));
+        previous = v0;
+      }
+      if (bb.position() != end)
+        throw new IllegalStateException("Compressed faces end at " + bb.position() + " instead of " + end);
+    } else {
+      int indexSize = bb.get();
+      for (int i = 0; i < faceCount; i++) {
+        if (indexSize == 1)
+          faces.add(face(Byte.toUnsignedInt(bb.get()), Byte.toUnsignedInt(bb.get()), Byte.toUnsignedInt(bb.get())));
+        else
+          faces.add(face(Short.toUnsignedInt(bb.getShort()), Short.toUnsignedInt(bb.getShort()), Short.toUnsignedInt(bb.getShort())));
+      }
+    }
+    List<BvhNode> bvh = null;
+    if (features.contains(Feature.BVH)) {
+      bvh = new ArrayList<>();
+      for (int i = bb.getInt(); i > 0; i--)
+        bvh.add(new BvhNode(readFloats(6), bb.getInt(), Byte.toUnsignedInt(bb.get())));
+    }
+    float[] facePlanes = features.contains(Feature.FACE_PLANES) ? readFloats(faceCount * 4) : null;
+    return new Geometry(vertices, faces, bvh, facePlanes);
+  }
+
+  private int readVarInt() {
+    int value = 0;
+    for (int shift = 0; ; shift += 7) {
+      byte b = bb.get();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0)
+        return value;
+    }
+  }
+
+  private float[] readFloats(int count) {
+    float[] values = new float[count];
+    for (int i = 0; i < count; i++)
+      values[i] = bb.getFloat();
+    return values;
+  }
+
+  private static MeshFace face(int v0, int v1, int v2) {
+    MeshFace face = new MeshFace();
+    face.v0 = v0;
+    face.v1 = v1;
+    face.v2 = v2;
+    return face;
+  }
+
+  private record MeshHeader(String name, float[] bounds, int proxyType, int partCount) {}
+
+  /**
+   * @param bounds Min, max, center (3 floats each) and radius, or null without {@link Feature#BOUNDS}
+   */
+  record Mesh(String name, float[] bounds, int proxyType, List<Part> parts) {}
+
+  /**
+   * @param bounds Bounds of the geometry, or null without {@link Feature#BOUNDS}
+   * @param geometry Geometry as stored in the file, which is the canonical part for instances
+   * @param transform Instance transform, or null if the part is no instance
+   */
+  record Part(float[] bounds, Geometry geometry, int materialId, int collisionIntention, List<Lod> lods, Matrix4f transform) {
+
+    Part withTransform(Matrix4f transform) {
+      return new Part(bounds, geometry, materialId, collisionIntention, lods, transform);
+    }
+
+    /**
+     * @return The vertices as servers place them in the world
+     */
+    List<Vector3> getWorldVertices() {
+      if (transform == null)
+        return geometry.vertices;
+      List<Vector3> vertices = new ArrayList<>(geometry.vertices.size());
+      for (Vector3 vertex : geometry.vertices)
+        vertices.add(Vector3.transform(vertex, transform));
+      return vertices;
+    }
+  }
+
+  record Lod(float maxError, Geometry geometry) {}
+
+  /**
+   * @param bvh Nodes in depth-first order, or null without {@link Feature#BVH}
+   * @param facePlanes Normal and distance per face, or null without {@link Feature#FACE_PLANES}
+   */
+  record Geometry(List<Vector3> vertices, List<MeshFace> faces, List<BvhNode> bvh, float[] facePlanes) {}
+
+  /**
+   * @param bounds Min and max corner
+   * @param reference Index of the second child for inner nodes, or of the first face for leaves
+   */
+  record BvhNode(float[] bounds, int reference, int faceCount) {}
+}
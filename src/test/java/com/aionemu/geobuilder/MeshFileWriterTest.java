@@ -0,0 +1,251 @@
+package com.aionemu.geobuilder;
+
+import com.aionemu.geobuilder.MeshFileReader.Geometry;
+import com.aionemu.geobuilder.MeshFileReader.Mesh;
+import com.aionemu.geobuilder.MeshFileReader.Part;
+import com.aionemu.geobuilder.MeshFileWriter.Feature;
+import com.aionemu.geobuilder.meshData.*;
+import com.aionemu.geobuilder.meshData.MeshLodGenerator.MeshLod;
+import com.aionemu.geobuilder.meshData.PartInstancer.PartInstance;
+import com.aionemu.geobuilder.utils.Vector3;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MeshFileWriterTest {
+
+  private static final float INSTANCE_TOLERANCE = 0.01f;
+  /**
+   * Maximum distance between a quantized and the original vertex
+   */
+  private static final float QUANTIZATION_TOLERANCE = MeshFileWriter.MAX_QUANTIZATION_ERROR * 1.74f;
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void roundTripsWithoutFeatures() throws IOException {
+    assertRoundTrip(EnumSet.noneOf(Feature.class));
+  }
+
+  @ParameterizedTest
+  @EnumSource(Feature.class)
+  void roundTripsEachFeature(Feature feature) throws IOException {
+    assertRoundTrip(EnumSet.of(feature));
+  }
+
+  @Test
+  void roundTripsAllFeatures() throws IOException {
+    assertRoundTrip(EnumSet.allOf(Feature.class));
+  }
+
+  @Test
+  void compressedIndicesKeepWindingAndLargeDeltas() throws IOException {
+    MeshData part = TestMeshes.terrain(40, 100, 5); // 1681 vertices, so deltas need multiple varint bytes
+    Collections.shuffle(part.faces, new Random(3)); // first indices also decrease
+    Map<List<MeshData>, String> meshes = Map.of(List.of(part), "terrain.cgf");
+    Written written = write(EnumSet.of(Feature.COMPRESSED_INDICES), meshes);
+    List<MeshFace> faces = written.reader.meshes.getFirst().parts().getFirst().geometry().faces();
+    assertEquals(part.faces.size(), faces.size());
+    for (int i = 0; i < faces.size(); i++)
+      assertTrue(isRotation(part.faces.get(i), faces.get(i)), "Face " + i + " was written as " + faces.get(i));
+  }
+
+  private void assertRoundTrip(Set<Feature> features) throws IOException {
+    Map<List<MeshData>, String> meshes = createMeshes();
+    Written written = write(features, meshes);
+    MeshFileReader reader = written.reader;
+    assertEquals(features, reader.features);
+    assertEquals(features.contains(Feature.MESH_IDS) ? meshes.size() : -1, reader.meshCount);
+    assertEquals(meshes.size(), reader.meshes.size());
+    float tolerance = features.contains(Feature.QUANTIZED_VERTICES) ? QUANTIZATION_TOLERANCE : 0;
+    if (features.contains(Feature.INSTANCED_PARTS))
+      tolerance += INSTANCE_TOLERANCE;
+    int meshIndex = 0;
+    for (Map.Entry<List<MeshData>, String> e : meshes.entrySet()) {
+      Mesh mesh = reader.meshes.get(meshIndex);
+      assertEquals(e.getValue(), mesh.name());
+      assertEquals(e.getKey().size(), mesh.parts().size());
+      for (int i = 0; i < mesh.parts().size(); i++) {
+        MeshData expected = e.getKey().get(i);
+        Part part = mesh.parts().get(i);
+        assertEquals(expected.materialId, part.materialId());
+        assertEquals(expected.collisionIntention, part.collisionIntention());
+        assertSameSurface(expected.vertices, expected.faces, part.getWorldVertices(), part.geometry().faces(), tolerance);
+        if (features.contains(Feature.BOUNDS)) {
+          assertContains(part.bounds(), part.geometry().vertices());
+          assertContains(mesh.bounds(), part.getWorldVertices());
+        }
+        if (features.contains(Feature.BVH))
+          assertLeavesContainFaces(part.geometry());
+        if (features.contains(Feature.FACE_PLANES))
+          assertFacePlanes(part.geometry());
+        if (features.contains(Feature.LODS)) {
+          PartInstance instance = features.contains(Feature.INSTANCED_PARTS) ? written.instances.get(expected) : null;
+          List<MeshLod> lods = written.lods.get(instance == null ? expected : instance.canonicalPart());
+          assertEquals(lods.size(), part.lods().size());
+          for (int lod = 0; lod < lods.size(); lod++) {
+            assertEquals(lods.get(lod).maxError(), part.lods().get(lod).maxError());
+            assertEquals(lods.get(lod).mesh().faces.size(), part.lods().get(lod).geometry().faces().size());
+          }
+        }
+      }
+      if (features.contains(Feature.COLLISION_PROXIES)) {
+        CollisionProxy proxy = written.proxies.get(e.getKey());
+        assertEquals(proxy == null ? 0 : proxy.getType(), mesh.proxyType());
+      }
+      if (features.contains(Feature.MESH_IDS)) {
+        for (String name : e.getValue().split("\\|"))
+          assertEquals(meshIndex, written.writer.getMeshIds().get(name));
+      }
+      if (features.contains(Feature.LAYERS)) {
+        int intentions = MeshFileWriter.getCollisionIntentions(e.getKey());
+        for (Map.Entry<Integer, List<Integer>> layer : reader.offsetsByLayer.entrySet())
+          assertEquals((intentions & layer.getKey()) != 0, layer.getValue().contains(reader.meshOffsets.get(meshIndex)), "Layer " + layer.getKey());
+      }
+      meshIndex++;
+    }
+    if (features.contains(Feature.LAYERS)) {
+      for (List<Integer> offsets : reader.offsetsByLayer.values())
+        assertTrue(reader.meshOffsets.containsAll(offsets));
+    }
+    if (features.contains(Feature.INSTANCED_PARTS))
+      assertFalse(written.instances.isEmpty());
+    if (features.contains(Feature.COLLISION_PROXIES))
+      assertFalse(written.proxies.isEmpty());
+  }
+
+  private Map<List<MeshData>, String> createMeshes() {
+    MeshData box = TestMeshes.box(2, 3, 4);
+    MeshData rotatedBox = TestMeshes.transformedCopy(box, TestMeshes.rotationZ(0.7, 100, 50, 10), 1);
+    MeshData terrain = TestMeshes.terrain(20, 100, 5);
+    terrain.materialId = 3;
+    terrain.collisionIntention = CollisionIntention.PHYSICAL.getId() | CollisionIntention.WALK.getId();
+    Collections.shuffle(terrain.faces, new Random(2));
+    MeshData door = TestMeshes.box(1, 0.2f, 2);
+    door.collisionIntention = CollisionIntention.DOOR.getId();
+    Map<List<MeshData>, String> meshes = new LinkedHashMap<>();
+    meshes.put(List.of(box), "box.cgf");
+    meshes.put(List.of(rotatedBox), "box_rotated.cgf|box_copy.cgf");
+    meshes.put(List.of(terrain, door), "terrain.cgf");
+    return meshes;
+  }
+
+  private Written write(Set<Feature> features, Map<List<MeshData>, String> meshes) throws IOException {
+    MeshFileWriter writer = new MeshFileWriter(features);
+    List<MeshData> parts = meshes.keySet().stream().flatMap(List::stream).toList();
+    Map<MeshData, PartInstance> instances = new PartInstancer(INSTANCE_TOLERANCE, features.contains(Feature.QUANTIZED_VERTICES)).findInstances(parts);
+    writer.setPartInstances(instances);
+    CollisionProxyFitter fitter = new CollisionProxyFitter(0.01f);
+    Map<List<MeshData>, CollisionProxy> proxies = new HashMap<>();
+    for (List<MeshData> mesh : meshes.keySet()) {
+      CollisionProxy proxy = fitter.fit(mesh.stream().map(writer::getDecodedPart).toList());
+      if (proxy != null)
+        proxies.put(mesh, proxy);
+    }
+    writer.setCollisionProxies(proxies);
+    MeshLodGenerator lodGenerator = new MeshLodGenerator(List.of(0.5f, 2f));
+    Map<MeshData, List<MeshLod>> lods = new HashMap<>();
+    for (MeshData part : parts)
+      lods.put(part, lodGenerator.generate(part));
+    writer.setLods(lods);
+    Path file = tempDir.resolve("models.mesh");
+    writer.write(file, meshes);
+    return new Written(writer, instances, proxies, lods, new MeshFileReader(Files.readAllBytes(file), !features.isEmpty()));
+  }
+
+  /**
+   * Asserts that each expected face was written with the same winding and vertex positions within the tolerance. Face and vertex order may differ.
+   */
+  private static void assertSameSurface(List<Vector3> expectedVertices, List<MeshFace> expectedFaces, List<Vector3> vertices, List<MeshFace> faces,
+                                        float tolerance) {
+    assertEquals(expectedVertices.size(), vertices.size());
+    assertEquals(expectedFaces.size(), faces.size());
+    boolean[] matched = new boolean[faces.size()];
+    for (MeshFace expected : expectedFaces) {
+      Vector3[] a = { expectedVertices.get(expected.v0), expectedVertices.get(expected.v1), expectedVertices.get(expected.v2) };
+      boolean found = false;
+      for (int f = 0; f < matched.length && !found; f++) {
+        if (matched[f])
+          continue;
+        MeshFace face = faces.get(f);
+        Vector3[] b = { vertices.get(face.v0), vertices.get(face.v1), vertices.get(face.v2) };
+        for (int rotation = 0; rotation < 3 && !found; rotation++) {
+          found = isNear(a[0], b[rotation], tolerance) && isNear(a[1], b[(rotation + 1) % 3], tolerance) && isNear(a[2], b[(rotation + 2) % 3], tolerance);
+          matched[f] = found;
+        }
+      }
+      assertTrue(found, "Face " + Arrays.toString(a) + " is missing");
+    }
+  }
+
+  private static boolean isNear(Vector3 a, Vector3 b, float tolerance) {
+    double dx = a.x - b.x, dy = a.y - b.y, dz = a.z - b.z;
+    return Math.sqrt(dx * dx + dy * dy + dz * dz) <= tolerance;
+  }
+
+  private static boolean isRotation(MeshFace expected, MeshFace face) {
+    int[] a = { expected.v0, expected.v1, expected.v2 }, b = { face.v0, face.v1, face.v2 };
+    for (int rotation = 0; rotation < 3; rotation++) {
+      if (a[0] == b[rotation] && a[1] == b[(rotation + 1) % 3] && a[2] == b[(rotation + 2) % 3])
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Asserts that the box (min and max corner) and the sphere (center and radius) of the bounds contain all vertices
+   */
+  private static void assertContains(float[] bounds, List<Vector3> vertices) {
+    for (Vector3 v : vertices) {
+      assertTrue(v.x >= bounds[0] && v.y >= bounds[1] && v.z >= bounds[2] && v.x <= bounds[3] && v.y <= bounds[4] && v.z <= bounds[5], v + " is outside the box");
+      double dx = v.x - bounds[6], dy = v.y - bounds[7], dz = v.z - bounds[8];
+      assertTrue(Math.sqrt(dx * dx + dy * dy + dz * dz) <= bounds[9], v + " is outside the sphere");
+    }
+  }
+
+  /**
+   * Asserts that each face is referenced by exactly one leaf, whose bounds contain the face
+   */
+  private static void assertLeavesContainFaces(Geometry geometry) {
+    int[] leafCounts = new int[geometry.faces().size()];
+    for (MeshFileReader.BvhNode node : geometry.bvh()) {
+      for (int f = node.reference(); f < node.reference() + node.faceCount(); f++) {
+        leafCounts[f]++;
+        MeshFace face = geometry.faces().get(f);
+        assertContains(node.bounds(), geometry.vertices().get(face.v0), geometry.vertices().get(face.v1), geometry.vertices().get(face.v2));
+      }
+    }
+    for (int count : leafCounts)
+      assertEquals(1, count);
+  }
+
+  private static void assertContains(float[] box, Vector3... vertices) {
+    for (Vector3 v : vertices)
+      assertTrue(v.x >= box[0] && v.y >= box[1] && v.z >= box[2] && v.x <= box[3] && v.y <= box[4] && v.z <= box[5], v + " is outside the node");
+  }
+
+  private static void assertFacePlanes(Geometry geometry) {
+    float[] planes = geometry.facePlanes();
+    for (int f = 0; f < geometry.faces().size(); f++) {
+      MeshFace face = geometry.faces().get(f);
+      float nx = planes[f * 4], ny = planes[f * 4 + 1], nz = planes[f * 4 + 2], d = planes[f * 4 + 3];
+      assertEquals(1, Math.sqrt(nx * nx + ny * ny + nz * nz), 1e-5);
+      for (int v : new int[] { face.v0, face.v1, face.v2 }) {
+        Vector3 p = geometry.vertices().get(v);
+        assertEquals(d, nx * p.x + ny * p.y + nz * p.z, 1e-3, "Vertex " + p + " is not in the plane of face " + f);
+      }
+    }
+  }
+
+  private record Written(MeshFileWriter writer, Map<MeshData, PartInstance> instances, Map<List<MeshData>, CollisionProxy> proxies,
+                         Map<MeshData, List<MeshLod>> lods, MeshFileReader reader) {}
+}
@@ -0,0 +1,138 @@
+package com.aionemu.geobuilder.meshData;
+
+import com.aionemu.geobuilder.utils.Vector3;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CollisionProxyFitterTest {
+
+  private static final float MAX_ERROR = 0.05f;
+
+  @Test
+  void fitsBoxToRotatedBox() {
+    MeshData box = TestMeshes.transformedCopy(TestMeshes.box(2, 3, 4), TestMeshes.rotationZ(0.6, 10, 20, 30), 1);
+    CollisionProxy.Box proxy = assertInstanceOf(CollisionProxy.Box.class, new CollisionProxyFitter(MAX_ERROR).fit(List.of(box)));
+    float[] halfExtents = { proxy.halfExtents().x, proxy.halfExtents().y, proxy.halfExtents().z };
+    Arrays.sort(halfExtents);
+    assertArrayEquals(new float[] { 1, 1.5f, 2 }, halfExtents, MAX_ERROR);
+    for (Vector3 vertex : box.vertices)
+      assertTrue(getBoxDistance(proxy, vertex) <= MAX_ERROR, vertex + " is not on the box surface");
+  }
+
+  @Test
+  void fitsCapsuleToCapsule() {
+    MeshData capsule = capsule(1, 3);
+    CollisionProxy.Capsule proxy = assertInstanceOf(CollisionProxy.Capsule.class, new CollisionProxyFitter(MAX_ERROR).fit(List.of(capsule)));
+    assertEquals(1, proxy.radius(), MAX_ERROR);
+    for (Vector3 vertex : capsule.vertices)
+      assertEquals(proxy.radius(), getSegmentDistance(proxy.start(), proxy.end(), vertex), MAX_ERROR, vertex + " is not on the capsule surface");
+  }
+
+  @Test
+  void fitsConvexHullToPyramid() {
+    MeshData pyramid = new MeshData();
+    pyramid.vertices = new ArrayList<>(List.of(new Vector3(0, 0, 0), new Vector3(4, 0, 0), new Vector3(4, 4, 0), new Vector3(0, 4, 0), new Vector3(2, 2, 3)));
+    pyramid.faces = new ArrayList<>(List.of(TestMeshes.face(0, 2, 1), TestMeshes.face(0, 3, 2), TestMeshes.face(0, 1, 4), TestMeshes.face(1, 2, 4),
+        TestMeshes.face(2, 3, 4), TestMeshes.face(3, 0, 4)));
+    CollisionProxy.ConvexHull proxy = assertInstanceOf(CollisionProxy.ConvexHull.class, new CollisionProxyFitter(MAX_ERROR).fit(List.of(pyramid)));
+    for (Vector3 vertex : pyramid.vertices) {
+      double maxDistance = -Double.MAX_VALUE; // signed distance to the hull, positive outside
+      for (MeshFace face : proxy.faces())
+        maxDistance = Math.max(maxDistance, getPlaneDistance(proxy.vertices()[face.v0], proxy.vertices()[face.v1], proxy.vertices()[face.v2], vertex));
+      assertEquals(0, maxDistance, MAX_ERROR, vertex + " is not on the hull surface");
+    }
+  }
+
+  @Test
+  void fitsNothingToConcaveSurfaces() {
+    assertNull(new CollisionProxyFitter(MAX_ERROR).fit(List.of(TestMeshes.terrain(10, 20, 3))));
+  }
+
+  @Test
+  void fitsNothingToLargeOrMixedMeshes() {
+    CollisionProxyFitter fitter = new CollisionProxyFitter(MAX_ERROR);
+    MeshData large = TestMeshes.terrain(23, 20, 0); // 1058 faces
+    assertTrue(large.faces.size() > CollisionProxyFitter.MAX_FACES);
+    assertNull(fitter.fit(List.of(large)));
+    MeshData box = TestMeshes.box(1, 1, 1), door = TestMeshes.box(1, 1, 1);
+    door.collisionIntention = CollisionIntention.DOOR.getId();
+    assertNull(fitter.fit(List.of(box, door)));
+  }
+
+  /**
+   * @return A capsule along the z axis with the given radius and segment half length
+   */
+  private static MeshData capsule(float radius, float halfLength) {
+    int segments = 24, capRings = 8;
+    MeshData mesh = new MeshData();
+    mesh.vertices = new ArrayList<>();
+    mesh.faces = new ArrayList<>();
+    List<double[]> rings = new ArrayList<>(); // z offset and ring radius
+    for (int i = 1; i <= capRings; i++) {
+      double angle = Math.PI / 2 * i / capRings;
+      rings.add(new double[] { -halfLength - radius * Math.cos(angle), radius * Math.sin(angle) });
+    }
+    for (int i = capRings; i >= 1; i--) {
+      double angle = Math.PI / 2 * i / capRings;
+      rings.add(new double[] { halfLength + radius * Math.cos(angle), radius * Math.sin(angle) });
+    }
+    mesh.vertices.add(new Vector3(0, 0, -halfLength - radius));
+    for (double[] ring : rings) {
+      for (int s = 0; s < segments; s++) {
+        double angle = 2 * Math.PI * s / segments;
+        mesh.vertices.add(new Vector3((float) (ring[1] * Math.cos(angle)), (float) (ring[1] * Math.sin(angle)), (float) ring[0]));
+      }
+    }
+    int top = mesh.vertices.size();
+    mesh.vertices.add(new Vector3(0, 0, halfLength + radius));
+    for (int s = 0; s < segments; s++) {
+      int next = (s + 1) % segments;
+      mesh.faces.add(TestMeshes.face(0, 1 + next, 1 + s));
+      for (int r = 0; r < rings.size() - 1; r++) {
+        int a = 1 + r * segments + s, b = 1 + r * segments + next, c = a + segments, d = b + segments;
+        mesh.faces.add(TestMeshes.face(a, b, d));
+        mesh.faces.add(TestMeshes.face(a, d, c));
+      }
+      mesh.faces.add(TestMeshes.face(top - segments + s, top - segments + next, top));
+    }
+    return mesh;
+  }
+
+  /**
+   * @return The distance between the point and the box surface
+   */
+  private static double getBoxDistance(CollisionProxy.Box box, Vector3 p) {
+    double dx = p.x - box.center().x, dy = p.y - box.center().y, dz = p.z - box.center().z;
+    float[] halfExtents = { box.halfExtents().x, box.halfExtents().y, box.halfExtents().z };
+    double outside = 0, inside = -Double.MAX_VALUE;
+    for (int i = 0; i < 3; i++) {
+      Vector3 axis = box.axes()[i];
+      double d = Math.abs(dx * axis.x + dy * axis.y + dz * axis.z) - halfExtents[i];
+      outside += Math.max(0, d) * Math.max(0, d);
+      inside = Math.max(inside, d);
+    }
+    return outside > 0 ? Math.sqrt(outside) : -inside;
+  }
+
+  private static double getSegmentDistance(Vector3 start, Vector3 end, Vector3 p) {
+    double ex = end.x - start.x, ey = end.y - start.y, ez = end.z - start.z;
+    double px = p.x - start.x, py = p.y - start.y, pz = p.z - start.z;
+    double t = Math.clamp((px * ex + py * ey + pz * ez) / (ex * ex + ey * ey + ez * ez), 0, 1);
+    double dx = px - ex * t, dy = py - ey * t, dz = pz - ez * t;
+    return Math.sqrt(dx * dx + dy * dy + dz * dz);
+  }
+
+  /**
+   * @return The signed distance between the point and the plane of the triangle, positive on the side of its normal (b - a) x (c - a)
+   */
+  private static double getPlaneDistance(Vector3 a, Vector3 b, Vector3 c, Vector3 p) {
+    double abx = b.x - a.x, aby = b.y - a.y, abz = b.z - a.z, acx = c.x - a.x, acy = c.y - a.y, acz = c.z - a.z;
+    double nx = aby * acz - abz * acy, ny = abz * acx - abx * acz, nz = abx * acy - aby * acx;
+    return (nx * (p.x - a.x) + ny * (p.y - a.y) + nz * (p.z - a.z)) / Math.sqrt(nx * nx + ny * ny + nz * nz);
+  }
+}
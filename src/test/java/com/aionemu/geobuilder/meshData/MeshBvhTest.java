@@ -0,0 +1,86 @@
+package com.aionemu.geobuilder.meshData;
+
+import com.aionemu.geobuilder.utils.Vector3;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MeshBvhTest {
+
+  @Test
+  void nodesContainTheirFacesAndChildren() {
+    MeshData part = TestMeshes.terrain(30, 200, 20);
+    Collections.shuffle(part.faces, new Random(1));
+    assertValidHierarchy(new MeshBvh(part.faces, part.vertices), part.vertices);
+  }
+
+  @Test
+  void nodesContainDecodedFaces() {
+    MeshData part = TestMeshes.terrain(30, 200, 20);
+    List<Vector3> decodedVertices = QuantizedVertices.getDecodedVertices(part.vertices);
+    assertNotSame(part.vertices, decodedVertices);
+    assertValidHierarchy(new MeshBvh(part.faces, decodedVertices), decodedVertices);
+  }
+
+  @Test
+  void buildsSingleLeafForFewFaces() {
+    MeshData part = TestMeshes.terrain(1, 1, 0);
+    MeshBvh bvh = new MeshBvh(part.faces, part.vertices);
+    assertEquals(1, bvh.getNodeCount());
+    assertEquals(2, bvh.getNodeFaceCount(0));
+    assertValidHierarchy(bvh, part.vertices);
+  }
+
+  @Test
+  void buildsNoNodesWithoutFaces() {
+    assertEquals(0, new MeshBvh(List.of(), List.of()).getNodeCount());
+  }
+
+  /**
+   * Walks the nodes in depth-first order and asserts that each node contains its children or faces and that each face is in exactly one leaf
+   */
+  private static void assertValidHierarchy(MeshBvh bvh, List<Vector3> vertices) {
+    List<MeshFace> faces = bvh.getOrderedFaces();
+    int[] leafCounts = new int[faces.size()];
+    int next = assertValidNode(bvh, 0, faces, vertices, leafCounts);
+    assertEquals(bvh.getNodeCount(), next);
+    for (int f = 0; f < leafCounts.length; f++)
+      assertEquals(1, leafCounts[f], "Leaf count of face " + f);
+  }
+
+  /**
+   * @return The index of the node after the subtree of the given node
+   */
+  private static int assertValidNode(MeshBvh bvh, int node, List<MeshFace> faces, List<Vector3> vertices, int[] leafCounts) {
+    float[] bounds = bvh.getNodeBounds(node);
+    int faceCount = bvh.getNodeFaceCount(node);
+    if (faceCount > 0) {
+      assertTrue(faceCount <= MeshBvh.MAX_LEAF_FACES);
+      for (int f = bvh.getNodeReference(node); f < bvh.getNodeReference(node) + faceCount; f++) {
+        leafCounts[f]++;
+        MeshFace face = faces.get(f);
+        for (int v : new int[] { face.v0, face.v1, face.v2 }) {
+          Vector3 vertex = vertices.get(v);
+          assertContains(bounds, new float[] { vertex.x, vertex.y, vertex.z, vertex.x, vertex.y, vertex.z }, "Face " + f + " of node " + node);
+        }
+      }
+      return node + 1;
+    }
+    int firstChild = node + 1, secondChild = bvh.getNodeReference(node);
+    assertContains(bounds, bvh.getNodeBounds(firstChild), "Node " + firstChild);
+    assertContains(bounds, bvh.getNodeBounds(secondChild), "Node " + secondChild);
+    assertEquals(secondChild, assertValidNode(bvh, firstChild, faces, vertices, leafCounts), "Second child of node " + node);
+    return assertValidNode(bvh, secondChild, faces, vertices, leafCounts);
+  }
+
+  private static void assertContains(float[] outer, float[] inner, String message) {
+    for (int axis = 0; axis < 3; axis++) {
+      assertTrue(outer[axis] <= inner[axis], message + " exceeds the min corner");
+      assertTrue(outer[axis + 3] >= inner[axis + 3], message + " exceeds the max corner");
+    }
+  }
+}
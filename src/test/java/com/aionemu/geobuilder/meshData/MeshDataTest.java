@@ -0,0 +1,69 @@
+package com.aionemu.geobuilder.meshData;
+
+import com.aionemu.geobuilder.utils.Matrix4f;
+import com.aionemu.geobuilder.utils.Vector3;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MeshDataTest {
+
+  @Test
+  void sortSpatiallyKeepsTriangles() {
+    MeshData part = TestMeshes.terrain(20, 100, 10);
+    Map<Set<Vector3>, Integer> triangles = getTriangleCounts(part);
+    part.sortSpatially();
+    assertEquals(triangles, getTriangleCounts(part));
+  }
+
+  @Test
+  void sortSpatiallyOnlyDependsOnContent() {
+    MeshData terrain = TestMeshes.terrain(20, 100, 10);
+    MeshData part = TestMeshes.transformedCopy(terrain, new Matrix4f(), 1);
+    MeshData shuffled = TestMeshes.transformedCopy(terrain, new Matrix4f(), 2);
+    part.sortSpatially();
+    shuffled.sortSpatially();
+    assertEquals(part, shuffled);
+    for (int i = 0; i < part.faces.size(); i++)
+      assertEquals(0, part.faces.get(i).compareTo(shuffled.faces.get(i)), "Face " + i);
+  }
+
+  @Test
+  void sortSpatiallyOrdersQuadrantsAlongMortonCurve() {
+    MeshData grid = TestMeshes.terrain(8, 8, 0);
+    Collections.shuffle(grid.faces, new Random(1));
+    grid.sortSpatially();
+    int previousQuadrant = 0;
+    for (Vector3 vertex : grid.vertices) {
+      int quadrant = getQuadrant(vertex.x, vertex.y);
+      assertTrue(quadrant >= previousQuadrant, vertex + " follows a vertex of quadrant " + previousQuadrant);
+      previousQuadrant = quadrant;
+    }
+    previousQuadrant = 0;
+    for (MeshFace face : grid.faces) {
+      Vector3 a = grid.vertices.get(face.v0), b = grid.vertices.get(face.v1), c = grid.vertices.get(face.v2);
+      int quadrant = getQuadrant((a.x + b.x + c.x) / 3, (a.y + b.y + c.y) / 3);
+      assertTrue(quadrant >= previousQuadrant, "Face centroid in quadrant " + quadrant + " follows one of quadrant " + previousQuadrant);
+      previousQuadrant = quadrant;
+    }
+  }
+
+  /**
+   * @return The Z-order index of the quadrant of the 8x8 grid, split where the highest bit of the 21-bit Morton coordinates changes
+   */
+  private static int getQuadrant(float x, float y) {
+    return (x / 8 * 0x1FFFFF >= 0x100000 ? 1 : 0) | (y / 8 * 0x1FFFFF >= 0x100000 ? 2 : 0);
+  }
+
+  /**
+   * @return The number of faces per set of vertex positions
+   */
+  private static Map<Set<Vector3>, Integer> getTriangleCounts(MeshData part) {
+    Map<Set<Vector3>, Integer> counts = new HashMap<>();
+    for (MeshFace face : part.faces)
+      counts.merge(Set.of(part.vertices.get(face.v0), part.vertices.get(face.v1), part.vertices.get(face.v2)), 1, Integer::sum);
+    return counts;
+  }
+}
@@ -0,0 +1,123 @@
+package com.aionemu.geobuilder.meshData;
+
+import com.aionemu.geobuilder.utils.Vector3;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MeshSimplifierTest {
+
+  @Test
+  void keepsOriginalVerticesWithinMaxError() {
+    MeshData original = TestMeshes.terrain(30, 100, 5);
+    MeshData simplified = copy(original);
+    float maxError = 0.25f;
+    int removedFaces = new MeshSimplifier(maxError).simplify(simplified);
+    assertTrue(removedFaces > 0);
+    assertEquals(original.faces.size() - removedFaces, simplified.faces.size());
+    for (Vector3 vertex : original.vertices)
+      assertTrue(getDistance(vertex, simplified) <= maxError * 1.001f, vertex + " is too far from the simplified surface");
+    for (Vector3 vertex : simplified.vertices)
+      assertTrue(original.vertices.contains(vertex), vertex + " is a new position");
+  }
+
+  @Test
+  void mergesCoplanarFaces() {
+    MeshData grid = TestMeshes.terrain(10, 10, 0);
+    new MeshSimplifier(0.01f).simplify(grid);
+    assertEquals(2, grid.faces.size());
+    for (Vector3 corner : new Vector3[] { new Vector3(0, 0, 0), new Vector3(10, 0, 0), new Vector3(0, 10, 0), new Vector3(10, 10, 0) }) {
+      boolean kept = grid.vertices.stream().anyMatch(v -> v.x == corner.x && v.y == corner.y && v.z == corner.z); // heights may be -0
+      assertTrue(kept, "Corner " + corner + " was removed");
+    }
+  }
+
+  @Test
+  void allowsMoreErrorForWalkObstacles() {
+    MeshSimplifier simplifier = new MeshSimplifier(0.1f);
+    assertEquals(0.1f, simplifier.getMaxError(CollisionIntention.PHYSICAL.getId()));
+    assertEquals(0.4f, simplifier.getMaxError(CollisionIntention.WALK.getId()));
+    assertEquals(0.1f, simplifier.getMaxError(CollisionIntention.PHYSICAL.getId() | CollisionIntention.WALK.getId()));
+  }
+
+  @Test
+  void skipsPartsWhoseIndicesDontFitInPackedKeys() {
+    MeshData part = TestMeshes.terrain(1, 1, 0);
+    part.vertices = Collections.nCopies(MeshFace.MAX_PACKED_VERTEX_INDEX + 2, new Vector3());
+    assertEquals(0, new MeshSimplifier(1).simplify(part));
+    assertEquals(2, part.faces.size());
+  }
+
+  private static MeshData copy(MeshData mesh) {
+    MeshData copy = new MeshData();
+    copy.vertices = new ArrayList<>(mesh.vertices);
+    copy.faces = new ArrayList<>();
+    for (MeshFace face : mesh.faces)
+      copy.faces.add(TestMeshes.face(face.v0, face.v1, face.v2));
+    return copy;
+  }
+
+  private static double getDistance(Vector3 p, MeshData mesh) {
+    double min = Double.MAX_VALUE;
+    for (MeshFace face : mesh.faces)
+      min = Math.min(min, getDistance(p, mesh.vertices.get(face.v0), mesh.vertices.get(face.v1), mesh.vertices.get(face.v2)));
+    return min;
+  }
+
+  /**
+   * @return The distance between the point and the closest point of the triangle (Ericson, Real-Time Collision Detection, 5.1.5)
+   */
+  private static double getDistance(Vector3 p, Vector3 a, Vector3 b, Vector3 c) {
+    double[] ab = sub(b, a), ac = sub(c, a), ap = sub(p, a);
+    double d1 = dot(ab, ap), d2 = dot(ac, ap);
+    if (d1 <= 0 && d2 <= 0)
+      return length(ap);
+    double[] bp = sub(p, b);
+    double d3 = dot(ab, bp), d4 = dot(ac, bp);
+    if (d3 >= 0 && d4 <= d3)
+      return length(bp);
+    double vc = d1 * d4 - d3 * d2;
+    if (vc <= 0 && d1 >= 0 && d3 <= 0)
+      return distanceTo(ap, ab, d1 / (d1 - d3), ac, 0);
+    double[] cp = sub(p, c);
+    double d5 = dot(ab, cp), d6 = dot(ac, cp);
+    if (d6 >= 0 && d5 <= d6)
+      return length(cp);
+    double vb = d5 * d2 - d1 * d6;
+    if (vb <= 0 && d2 >= 0 && d6 <= 0)
+      return distanceTo(ap, ab, 0, ac, d2 / (d2 - d6));
+    double va = d3 * d6 - d5 * d4;
+    if (va <= 0 && d4 - d3 >= 0 && d5 - d6 >= 0) {
+      double w = (d4 - d3) / ((d4 - d3) + (d5 - d6));
+      return distanceTo(ap, ab, 1 - w, ac, w);
+    }
+    double denom = 1 / (va + vb + vc);
+    return distanceTo(ap, ab, vb * denom, ac, vc * denom);
+  }
+
+  /**
+   * @return The distance between ap and the point ab * v + ac * w, all relative to a
+   */
+  private static double distanceTo(double[] ap, double[] ab, double v, double[] ac, double w) {
+    double[] d = new double[3];
+    for (int i = 0; i < 3; i++)
+      d[i] = ap[i] - ab[i] * v - ac[i] * w;
+    return length(d);
+  }
+
+  private static double[] sub(Vector3 a, Vector3 b) {
+    return new double[] { a.x - b.x, a.y - b.y, a.z - b.z };
+  }
+
+  private static double dot(double[] a, double[] b) {
+    return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
+  }
+
+  private static double length(double[] a) {
+    return Math.sqrt(dot(a, a));
+  }
+}
@@ -0,0 +1,73 @@
+package com.aionemu.geobuilder.meshData;
+
+import com.aionemu.geobuilder.utils.Vector3;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MeshSplitterTest {
+
+  @Test
+  void splitsIntoTilesWithinVertexLimit() {
+    MeshData part = TestMeshes.terrain(100, 500, 10);
+    List<MeshData> tiles = new MeshSplitter(1000).split(List.of(part));
+    assertTrue(tiles.size() > 1);
+    for (MeshData tile : tiles)
+      assertTrue(tile.vertices.size() <= 1000, "Tile has " + tile.vertices.size() + " vertices");
+    assertSameFaces(List.of(part), tiles);
+  }
+
+  @Test
+  void growsTilesToStayWithinPartLimit() {
+    MeshData part = TestMeshes.terrain(200, 2000, 10); // needs thousands of tiles with 16 vertices each
+    List<MeshData> tiles = new MeshSplitter(16).split(List.of(part));
+    assertTrue(tiles.size() <= MeshSplitter.MAX_PARTS, tiles.size() + " tiles");
+    for (MeshData tile : tiles) {
+      assertTrue(tile.vertices.size() <= MeshSplitter.MAX_TILE_SIZE, "Tile has " + tile.vertices.size() + " vertices");
+      assertTrue(tile.faces.size() <= MeshSplitter.MAX_TILE_SIZE, "Tile has " + tile.faces.size() + " faces");
+    }
+    assertSameFaces(List.of(part), tiles);
+  }
+
+  @Test
+  void keepsPartsWhichFit() {
+    MeshData small = TestMeshes.box(1, 1, 1);
+    MeshData large = TestMeshes.terrain(20, 100, 10);
+    List<MeshData> tiles = new MeshSplitter(100).split(List.of(small, large));
+    assertSame(small, tiles.getFirst());
+    assertTrue(tiles.size() > 2);
+  }
+
+  @Test
+  void rejectsMeshesWithTooManyParts() {
+    List<MeshData> parts = Collections.nCopies(MeshSplitter.MAX_PARTS + 1, TestMeshes.box(1, 1, 1));
+    assertThrows(IllegalArgumentException.class, () -> new MeshSplitter(100).split(parts));
+  }
+
+  @Test
+  void rejectsInvalidTileSizes() {
+    assertThrows(IllegalArgumentException.class, () -> new MeshSplitter(2));
+    assertThrows(IllegalArgumentException.class, () -> new MeshSplitter(MeshSplitter.MAX_TILE_SIZE + 1));
+  }
+
+  /**
+   * Asserts that the tiles contain exactly the faces of the parts, with the same winding and vertex positions
+   */
+  private static void assertSameFaces(List<MeshData> parts, List<MeshData> tiles) {
+    assertEquals(getFaceCounts(parts), getFaceCounts(tiles));
+  }
+
+  private static Map<List<Vector3>, Integer> getFaceCounts(List<MeshData> parts) {
+    Map<List<Vector3>, Integer> counts = new HashMap<>();
+    for (MeshData part : parts) {
+      for (MeshFace face : part.faces) {
+        List<Vector3> vertices = new ArrayList<>(List.of(part.vertices.get(face.v0), part.vertices.get(face.v1), part.vertices.get(face.v2)));
+        Collections.rotate(vertices, -vertices.indexOf(Collections.min(vertices))); // start with the smallest vertex, keeping the winding
+        counts.merge(vertices, 1, Integer::sum);
+      }
+    }
+    return counts;
+  }
+}
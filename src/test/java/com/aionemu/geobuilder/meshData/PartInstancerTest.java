@@ -0,0 +1,78 @@
+package com.aionemu.geobuilder.meshData;
+
+import com.aionemu.geobuilder.meshData.PartInstancer.PartInstance;
+import com.aionemu.geobuilder.utils.Matrix4f;
+import com.aionemu.geobuilder.utils.Vector3;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartInstancerTest {
+
+  private static final float TOLERANCE = 0.01f;
+
+  @Test
+  void findsRotatedAndTranslatedCopies() {
+    MeshData part = TestMeshes.terrain(4, 10, 2);
+    MeshData copy = TestMeshes.transformedCopy(part, TestMeshes.rotationZ(2.1, -300, 20, 7), 1);
+    MeshData copy2 = TestMeshes.transformedCopy(part, TestMeshes.rotationZ(-0.4, 5, 5000, -12), 2);
+    Map<MeshData, PartInstance> instances = new PartInstancer(TOLERANCE, false).findInstances(List.of(part, copy, copy2));
+    assertEquals(2, instances.size());
+    for (MeshData instance : List.of(copy, copy2)) {
+      assertSame(part, instances.get(instance).canonicalPart());
+      assertTransformedSurface(part.vertices, part, instances.get(instance).transform(), instance);
+    }
+  }
+
+  @Test
+  void verifiesTransformsAgainstQuantizedVertices() {
+    MeshData part = TestMeshes.terrain(4, 10, 2);
+    MeshData copy = TestMeshes.transformedCopy(part, TestMeshes.rotationZ(1.3, 2500, -800, 40), 1);
+    PartInstance instance = new PartInstancer(TOLERANCE, true).findInstances(List.of(part, copy)).get(copy);
+    assertNotNull(instance);
+    assertTransformedSurface(QuantizedVertices.getDecodedVertices(part.vertices), part, instance.transform(), copy);
+  }
+
+  @Test
+  void rejectsMirroredCopies() {
+    MeshData part = TestMeshes.terrain(4, 10, 2);
+    Matrix4f mirror = new Matrix4f(-1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 50, 0, 0, 1);
+    MeshData copy = TestMeshes.transformedCopy(part, mirror, 1);
+    assertTrue(new PartInstancer(TOLERANCE, false).findInstances(List.of(part, copy)).isEmpty());
+  }
+
+  @Test
+  void rejectsCopiesBeyondTolerance() {
+    MeshData part = TestMeshes.terrain(4, 10, 2);
+    MeshData copy = TestMeshes.transformedCopy(part, TestMeshes.rotationZ(0.5, 10, 10, 0), 1);
+    copy.vertices.get(3).z += TOLERANCE * 3;
+    assertTrue(new PartInstancer(TOLERANCE, false).findInstances(List.of(part, copy)).isEmpty());
+  }
+
+  /**
+   * Asserts that the transformed canonical faces match the faces of the copy with the same winding, within the tolerance
+   */
+  private static void assertTransformedSurface(List<Vector3> canonicalVertices, MeshData canonical, Matrix4f transform, MeshData copy) {
+    for (MeshFace face : canonical.faces) {
+      Vector3[] a = { Vector3.transform(canonicalVertices.get(face.v0), transform), Vector3.transform(canonicalVertices.get(face.v1), transform),
+          Vector3.transform(canonicalVertices.get(face.v2), transform) };
+      boolean found = false;
+      for (MeshFace copyFace : copy.faces) {
+        Vector3[] b = { copy.vertices.get(copyFace.v0), copy.vertices.get(copyFace.v1), copy.vertices.get(copyFace.v2) };
+        for (int rotation = 0; rotation < 3 && !found; rotation++)
+          found = isNear(a[0], b[rotation]) && isNear(a[1], b[(rotation + 1) % 3]) && isNear(a[2], b[(rotation + 2) % 3]);
+        if (found)
+          break;
+      }
+      assertTrue(found, "Transformed face " + face + " has no match in the copy");
+    }
+  }
+
+  private static boolean isNear(Vector3 a, Vector3 b) {
+    double dx = a.x - b.x, dy = a.y - b.y, dz = a.z - b.z;
+    return dx * dx + dy * dy + dz * dz <= TOLERANCE * TOLERANCE;
+  }
+}
@@ -0,0 +1,100 @@
+package com.aionemu.geobuilder.meshData;
+
+import com.aionemu.geobuilder.utils.Matrix4f;
+import com.aionemu.geobuilder.utils.Vector3;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds small meshes for tests.
+ */
+public class TestMeshes {
+
+  /**
+   * @return A box from -size/2 to size/2 on each axis with outward facing triangles
+   */
+  public static MeshData box(float sizeX, float sizeY, float sizeZ) {
+    MeshData mesh = new MeshData();
+    mesh.vertices = new ArrayList<>();
+    for (int i = 0; i < 8; i++)
+      mesh.vertices.add(new Vector3((i & 1) == 0 ? -sizeX / 2 : sizeX / 2, (i & 2) == 0 ? -sizeY / 2 : sizeY / 2, (i & 4) == 0 ? -sizeZ / 2 : sizeZ / 2));
+    mesh.faces = new ArrayList<>();
+    int[][] quads = { { 0, 2, 3, 1 }, { 4, 5, 7, 6 }, { 0, 1, 5, 4 }, { 2, 6, 7, 3 }, { 0, 4, 6, 2 }, { 1, 3, 7, 5 } };
+    for (int[] quad : quads) {
+      mesh.faces.add(face(quad[0], quad[1], quad[2]));
+      mesh.faces.add(face(quad[0], quad[2], quad[3]));
+    }
+    return mesh;
+  }
+
+  /**
+   * @return A grid of cells x cells quads in the xy plane from 0 to size, whose height is given by {@link #getHeight(float, float, float)}
+   */
+  public static MeshData terrain(int cells, float size, float amplitude) {
+    MeshData mesh = new MeshData();
+    mesh.vertices = new ArrayList<>();
+    for (int y = 0; y <= cells; y++) {
+      for (int x = 0; x <= cells; x++) {
+        float px = x * size / cells, py = y * size / cells;
+        mesh.vertices.add(new Vector3(px, py, getHeight(px, py, amplitude)));
+      }
+    }
+    mesh.faces = new ArrayList<>();
+    for (int y = 0; y < cells; y++) {
+      for (int x = 0; x < cells; x++) {
+        int i = y * (cells + 1) + x;
+        mesh.faces.add(face(i, i + 1, i + cells + 2));
+        mesh.faces.add(face(i, i + cells + 2, i + cells + 1));
+      }
+    }
+    return mesh;
+  }
+
+  public static float getHeight(float x, float y, float amplitude) {
+    return (float) (amplitude * Math.sin(x / 7) * Math.cos(y / 5));
+  }
+
+  /**
+   * @return A copy with transformed vertices, shuffled vertex order and shuffled faces
+   */
+  public static MeshData transformedCopy(MeshData mesh, Matrix4f transform, long seed) {
+    Random random = new Random(seed);
+    List<Integer> order = new ArrayList<>();
+    for (int i = 0; i < mesh.vertices.size(); i++)
+      order.add(i);
+    Collections.shuffle(order, random);
+    int[] newIndices = new int[order.size()];
+    MeshData copy = new MeshData();
+    copy.vertices = new ArrayList<>();
+    for (int i : order) {
+      newIndices[i] = copy.vertices.size();
+      copy.vertices.add(Vector3.transform(mesh.vertices.get(i), transform));
+    }
+    copy.faces = new ArrayList<>();
+    for (MeshFace face : mesh.faces)
+      copy.faces.add(face(newIndices[face.v0], newIndices[face.v1], newIndices[face.v2]));
+    Collections.shuffle(copy.faces, random);
+    copy.materialId = mesh.materialId;
+    copy.collisionIntention = mesh.collisionIntention;
+    return copy;
+  }
+
+  /**
+   * @return A rotation around the z axis followed by a translation, in the row vector layout of {@link Vector3#transform(Vector3, Matrix4f)}
+   */
+  public static Matrix4f rotationZ(double angle, float x, float y, float z) {
+    float cos = (float) Math.cos(angle), sin = (float) Math.sin(angle);
+    return new Matrix4f(cos, sin, 0, 0, -sin, cos, 0, 0, 0, 0, 1, 0, x, y, z, 1);
+  }
+
+  public static MeshFace face(int v0, int v1, int v2) {
+    MeshFace face = new MeshFace();
+    face.v0 = v0;
+    face.v1 = v1;
+    face.v2 = v2;
+    return face;
+  }
+}